@@ -0,0 +1,84 @@
+/*
+ * Interpolating the 11-point precision/recall curve of result lists of different lengths,
+ * and computing every measure of the Evaluator from the ranked run in a single pass
+ */
+package ir_course;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CurveBenchmark {
+
+	@Param({"200", "1000", "100000"})
+	public int hits;
+
+	private PrecisionRecallList results;
+	private int[] docIds;
+	private float[] scores;
+	private FixedBitSet relevantDocs;
+	private int relevantCount;
+	private final Evaluator evaluator = new Evaluator();
+	private double[] values;
+
+	// a ranked list where about one hit in five is relevant
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		boolean[] relevant = new boolean[hits];
+		int total = 0;
+		for (int i = 0; i < hits; i++) {
+			relevant[i] = random.nextInt(5) == 0;
+			if (relevant[i])
+				total++;
+		}
+		results = new PrecisionRecallList(hits);
+		int found = 0;
+		for (int rank = 1; rank <= hits; rank++) {
+			if (relevant[rank - 1])
+				found++;
+			results.add((double) found / total, (double) found / rank);
+		}
+		// the same list as a run where doc id i is at rank i + 1
+		docIds = new int[hits];
+		scores = new float[hits];
+		relevantDocs = new FixedBitSet(hits);
+		for (int i = 0; i < hits; i++) {
+			docIds[i] = i;
+			scores[i] = hits - i;
+			if (relevant[i])
+				relevantDocs.set(i);
+		}
+		relevantCount = total;
+		values = new double[evaluator.size()];
+	}
+
+	@Benchmark
+	public double[] interpolate() {
+		return LuceneSearchApp.getInterpolated11stepPrecisionRecallCurve(results);
+	}
+
+	@Benchmark
+	public double[] evaluate() {
+		evaluator.evaluate(docIds, scores, hits, relevantDocs, relevantCount, values, 0);
+		return values;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Benchmark fixtures: the evaluation corpus and scaled-up copies of it
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+public class Fixtures {
+
+	public static final int TASK_NUMBER = 2;
+
+	public static final String[] QUERIES = {
+		"social recommender system",
+		"a recommender system with explanations",
+		"novelty and diversity in recommender systems",
+	};
+
+	// discards everything the engines print
+	public static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+		public void write(int b) {
+		}
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	// corpus_part2.xml, from -Dir.corpus or looked up from the working directory
+	public static Path corpus() {
+		String property = System.getProperty("ir.corpus");
+		if (property != null)
+			return Paths.get(property);
+		for (String candidate : new String[] {"corpus_part2.xml", "../corpus_part2.xml"}) {
+			Path path = Paths.get(candidate);
+			if (Files.exists(path))
+				return path;
+		}
+		throw new IllegalStateException("corpus_part2.xml not found, pass -Dir.corpus=path/to/corpus_part2.xml");
+	}
+
+	// the corpus with its items repeated scale times, written to a temporary file
+	public static Path corpus(int scale) throws IOException {
+		if (scale == 1)
+			return corpus();
+		String xml = new String(Files.readAllBytes(corpus()), StandardCharsets.UTF_8);
+		int start = xml.indexOf("<item>");
+		int end = xml.lastIndexOf("</item>") + "</item>".length();
+		String items = xml.substring(start, end);
+		Path scaled = Files.createTempFile("corpus-x" + scale + "-", ".xml");
+		scaled.toFile().deleteOnExit();
+		CorpusSnapshot.pathFor(scaled).toFile().deleteOnExit();
+		try (OutputStream out = Files.newOutputStream(scaled)) {
+			out.write(xml.substring(0, start).getBytes(StandardCharsets.UTF_8));
+			byte[] body = items.getBytes(StandardCharsets.UTF_8);
+			for (int i = 0; i < scale; i++) {
+				out.write(body);
+				out.write('\n');
+			}
+			out.write(xml.substring(end).getBytes(StandardCharsets.UTF_8));
+		}
+		return scaled;
+	}
+
+	// all documents of the scaled corpus
+	public static List<DocumentInCollection> documents(int scale) throws IOException {
+		DocumentCollectionParser parser = new DocumentCollectionParser();
+		parser.parse(corpus(scale).toString());
+		return parser.getDocuments();
+	}
+
+	// a quiet engine for the ranking method, writing to a heap directory; without a
+	// result cache, so repeated queries are searched every time
+	public static LuceneSearchApp engine(String method) {
+		LuceneSearchApp engine = new LuceneSearchApp();
+		engine.out = NULL_OUT;
+		engine.setResultCache(null);
+		engine.setDirectoryType(DirectoryType.RAM);
+		engine.setRankingMethod(method, TASK_NUMBER);
+		return engine;
+	}
+}
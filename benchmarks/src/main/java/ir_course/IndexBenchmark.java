@@ -0,0 +1,56 @@
+/*
+ * Indexing the task documents with each ranking method
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexBenchmark {
+
+	@Param({"1", "2", "3", "4", "5", "6"})
+	public String method;
+
+	@Param({"1", "4"})
+	public int scale;
+
+	private List<DocumentInCollection> docs;
+	private LuceneSearchApp engine;
+
+	@Setup
+	public void setup() throws IOException {
+		docs = Fixtures.documents(scale);
+		engine = Fixtures.engine(method);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		engine.close();
+	}
+
+	@Benchmark
+	public void index() throws IOException {
+		engine.index(docs, Paths.get("index", "bench-" + method + "-" + scale));
+	}
+}
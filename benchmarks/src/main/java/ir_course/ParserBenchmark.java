@@ -0,0 +1,64 @@
+/*
+ * Parsing the corpus into documents, as a list, as a stream and from its
+ * binary snapshot
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParserBenchmark {
+
+	@Param({"1", "4"})
+	public int scale;
+
+	private String corpus;
+
+	@Setup
+	public void setup() throws IOException {
+		corpus = Fixtures.corpus(scale).toString();
+	}
+
+	@Benchmark
+	public List<DocumentInCollection> parse() {
+		DocumentCollectionParser parser = new DocumentCollectionParser();
+		parser.parse(corpus);
+		return parser.getDocuments();
+	}
+
+	@Benchmark
+	public long stream() throws IOException {
+		try (Stream<DocumentInCollection> docs = DocumentCollectionParser.stream(corpus)) {
+			return docs.count();
+		}
+	}
+
+	// the snapshot is written during the first invocation and mapped afterwards
+	@Benchmark
+	public long snapshot() throws IOException {
+		try (Stream<DocumentInCollection> docs = DocumentCollectionParser.load(corpus, Metrics.get("corpus"))) {
+			// every document is decoded, a sized stream would otherwise skip count()'s mapping
+			return docs.mapToInt(doc -> doc.getTitle().length()).sum();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Searching and evaluating the evaluation queries with each ranking method
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+	@Param({"1", "2", "3", "4", "5", "6"})
+	public String method;
+
+	@Param({"1", "4"})
+	public int scale;
+
+	private LuceneSearchApp engine;
+
+	@Setup
+	public void setup() throws IOException {
+		engine = Fixtures.engine(method);
+		engine.index(Fixtures.documents(scale), Paths.get("index", "bench-search-" + method + "-" + scale));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		engine.close();
+	}
+
+	// all evaluation queries, one search() each
+	@Benchmark
+	public void search(Blackhole blackhole) throws IOException {
+		for (String query : Fixtures.QUERIES)
+			blackhole.consume(engine.search(query, null, query, null, null, null));
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Indexing the corpus with the analysis chains of the six ranking methods,
+ * chain by chain or tokenized once for all of them
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SharedAnalysisBenchmark {
+
+	@Param({"1", "4"})
+	public int scale;
+
+	private List<DocumentInCollection> docs;
+	private final List<AnalysisRegistry.Chain> chains = new ArrayList<AnalysisRegistry.Chain>();
+
+	@Setup
+	public void setup() throws IOException {
+		docs = Fixtures.documents(scale);
+		for (String name : Arrays.asList("english-stop", "english", "standard-stop"))
+			chains.add(AnalysisRegistry.chain(name));
+	}
+
+	@Benchmark
+	public void separate() throws IOException {
+		for (AnalysisRegistry.Chain chain : chains) {
+			try (IndexWriter writer = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(chain.analyzer()))) {
+				new BulkIndexer(writer, new IndexingOptions()).index(docs.iterator());
+				writer.commit();
+			}
+		}
+	}
+
+	@Benchmark
+	public void shared() throws IOException {
+		List<IndexWriter> writers = new ArrayList<IndexWriter>();
+		for (AnalysisRegistry.Chain chain : chains)
+			writers.add(new IndexWriter(new RAMDirectory(), new IndexWriterConfig(chain.analyzer())));
+		new BulkIndexer(writers, chains, new IndexingOptions()).index(docs.iterator());
+		for (IndexWriter writer : writers) {
+			writer.commit();
+			writer.close();
+		}
+	}
+}
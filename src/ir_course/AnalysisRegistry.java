@@ -0,0 +1,114 @@
+/*
+ * Registry of the analysis chains and ranking similarities of the methods
+ * A chain is the standard tokenizer, lower-casing and a stopword set; a
+ * stemming chain strips English possessives before dropping stopwords and
+ * Porter-stems after. Tokenizing and stemming do not depend on the
+ * stopwords, so SharedAnalysis can do both once for all chains; analyzer()
+ * gives the equivalent Lucene analyzer, used for queries.
+ */
+package ir_course;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.search.similarities.LMDirichletSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+
+public class AnalysisRegistry {
+
+	// one analysis chain, named after its catalog directories
+	public static class Chain {
+		private final String name;
+		private final CharArraySet stopwords;
+		private final boolean stemmer;
+
+		public Chain(String name, CharArraySet stopwords, boolean stemmer) {
+			this.name = name;
+			this.stopwords = CharArraySet.unmodifiableSet(CharArraySet.copy(stopwords));
+			this.stemmer = stemmer;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public CharArraySet getStopwords() {
+			return stopwords;
+		}
+
+		public boolean hasStopwords() {
+			return !stopwords.isEmpty();
+		}
+
+		public boolean hasStemmer() {
+			return stemmer;
+		}
+
+		// a new analyzer running the whole chain
+		public Analyzer analyzer() {
+			return stemmer ? new EnglishAnalyzer(stopwords) : new StandardAnalyzer(stopwords);
+		}
+
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static final Map<String, Chain> chains = new LinkedHashMap<String, Chain>();
+	private static final Map<String, Supplier<Similarity>> similarities = new LinkedHashMap<String, Supplier<Similarity>>();
+
+	static {
+		register(new Chain("english-stop", EnglishAnalyzer.getDefaultStopSet(), true));
+		register(new Chain("english", CharArraySet.EMPTY_SET, true));
+		register(new Chain("standard-stop", StandardAnalyzer.STOP_WORDS_SET, false));
+		register(new Chain("standard", CharArraySet.EMPTY_SET, false));
+		registerSimilarity("vsm", ClassicSimilarity::new);
+		registerSimilarity("bm25", BM25Similarity::new);
+		registerSimilarity("LMDirichlet", LMDirichletSimilarity::new);
+	}
+
+	public static synchronized void register(Chain chain) {
+		chains.put(chain.getName(), chain);
+	}
+
+	public static synchronized void registerSimilarity(String ranking, Supplier<Similarity> similarity) {
+		similarities.put(ranking, similarity);
+	}
+
+	// the chain of the given name, null if there is none
+	public static synchronized Chain chain(String name) {
+		return chains.get(name);
+	}
+
+	// the first registered chain with or without stopwords and stemming
+	public static synchronized Chain chain(boolean stopwords, boolean stemmer) {
+		for (Chain chain : chains.values()) {
+			if (chain.hasStopwords() == stopwords && chain.hasStemmer() == stemmer)
+				return chain;
+		}
+		throw new IllegalArgumentException("no analysis chain with " + (stopwords ? "" : "no ") + "stopwords and " + (stemmer ? "" : "no ") + "stemmer");
+	}
+
+	public static synchronized List<Chain> chains() {
+		return new ArrayList<Chain>(chains.values());
+	}
+
+	public static synchronized boolean hasSimilarity(String ranking) {
+		return similarities.containsKey(ranking);
+	}
+
+	// a new similarity for the ranking, tf-idf for unknown ones
+	public static synchronized Similarity similarity(String ranking) {
+		Supplier<Similarity> similarity = similarities.get(ranking);
+		return similarity != null ? similarity.get() : new ClassicSimilarity();
+	}
+}
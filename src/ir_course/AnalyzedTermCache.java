@@ -0,0 +1,81 @@
+/*
+ * LRU cache of analyzed query text
+ * Maps (analysis chain, field, text) to the TermQuery clauses of the
+ * analyzed terms, so a topic that is searched again with the same chain
+ * is neither re-analyzed nor turned into queries again.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+
+public class AnalyzedTermCache {
+
+	private final LinkedHashMap<String, TermQuery[]> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public AnalyzedTermCache(int capacity) {
+		this.entries = new LinkedHashMap<String, TermQuery[]>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, TermQuery[]> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	// the term queries of the analyzed text in token order, analyzerKey identifies the analysis chain
+	public TermQuery[] get(String analyzerKey, Analyzer analyzer, String field, String text) throws IOException {
+		String key = analyzerKey + '\u0000' + field + '\u0000' + text;
+		TermQuery[] clauses;
+		synchronized (entries) {
+			clauses = entries.get(key);
+		}
+		if (clauses != null) {
+			hits.incrementAndGet();
+			return clauses;
+		}
+		misses.incrementAndGet();
+		clauses = analyze(analyzer, field, text);
+		synchronized (entries) {
+			entries.put(key, clauses);
+		}
+		return clauses;
+	}
+
+	// runs the text through the analyzer and makes a term query of every token
+	public static TermQuery[] analyze(Analyzer analyzer, String field, String text) throws IOException {
+		List<TermQuery> clauses = new ArrayList<TermQuery>();
+		try (TokenStream tokens = analyzer.tokenStream(field, text)) {
+			CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+			tokens.reset();
+			while (tokens.incrementToken())
+				clauses.add(new TermQuery(new Term(field, term.toString())));
+			tokens.end();
+		}
+		return clauses.toArray(new TermQuery[clauses.size()]);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Bulk indexing pipeline feeding one shared IndexWriter
+ * The calling thread reads documents into batches, worker threads turn
+ * each batch into Lucene documents with their own reused fields and add
+ * it with a single addDocuments call.
+ * Given several writers, one per analysis chain, a worker tokenizes the
+ * batch once with SharedAnalysis and adds it to every writer from there.
+ * Given the writers of the shards of an index and a router, a worker splits
+ * the batch by shard and adds every part to its shard's writer, so all
+ * shards are built at the same time.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexWriter;
+
+public class BulkIndexer {
+
+	// throughput of a finished indexing run
+	public static class Stats {
+		private final long docs;
+		private final long bytes;
+		private final long nanos;
+
+		Stats(long docs, long bytes, long nanos) {
+			this.docs = docs;
+			this.bytes = bytes;
+			this.nanos = nanos;
+		}
+
+		public long getDocs() {
+			return docs;
+		}
+
+		// UTF-8 size of the indexed text
+		public long getBytes() {
+			return bytes;
+		}
+
+		public double getSeconds() {
+			return nanos / 1e9;
+		}
+
+		public double docsPerSecond() {
+			return docs / getSeconds();
+		}
+
+		public double bytesPerSecond() {
+			return bytes / getSeconds();
+		}
+
+		public String toString() {
+			return String.format("Indexed %d docs (%.2f MB) in %.3f s: %.0f docs/s, %.2f MB/s",
+					docs, bytes / 1048576., getSeconds(), docsPerSecond(), bytesPerSecond() / 1048576.);
+		}
+	}
+
+	// marks the end of the input for a worker
+	private static final List<DocumentInCollection> END = Collections.emptyList();
+
+	// adds batches to the writers, every worker thread has its own
+	private interface BatchSink {
+		void add(List<DocumentInCollection> batch) throws IOException;
+	}
+
+	private final List<IndexWriter> writers;
+	// the analysis chain of every writer, null when the writer analyzes the documents itself
+	private final List<AnalysisRegistry.Chain> chains;
+	// the shard of every document, null unless the writers are shards
+	private final ShardRouter router;
+	private final int threads;
+	private final int batchSize;
+	private final IndexingOptions.Profile profile;
+
+	public BulkIndexer(IndexWriter writer, IndexingOptions options) {
+		this(Collections.singletonList(writer), (List<AnalysisRegistry.Chain>) null, options);
+	}
+
+	// the writers index the same documents with their chains, tokenized once
+	public BulkIndexer(List<IndexWriter> writers, List<AnalysisRegistry.Chain> chains, IndexingOptions options) {
+		if (chains != null && chains.size() != writers.size())
+			throw new IllegalArgumentException(writers.size() + " writers for " + chains.size() + " chains");
+		this.writers = new ArrayList<IndexWriter>(writers);
+		this.chains = chains == null ? null : new ArrayList<AnalysisRegistry.Chain>(chains);
+		this.router = null;
+		this.threads = options.getThreads();
+		this.batchSize = options.getBatchSize();
+		this.profile = options.getProfile();
+	}
+
+	// the writers are the shards of one index, a null writer skips the documents of its shard
+	public BulkIndexer(List<IndexWriter> shards, ShardRouter router, IndexingOptions options) {
+		this.writers = new ArrayList<IndexWriter>(shards);
+		this.chains = null;
+		this.router = router;
+		this.threads = options.getThreads();
+		this.batchSize = options.getBatchSize();
+		this.profile = options.getProfile();
+	}
+
+	private BatchSink newSink() {
+		if (router != null) {
+			IndexedDocument fields = new IndexedDocument(profile);
+			List<List<DocumentInCollection>> routed = new ArrayList<List<DocumentInCollection>>();
+			for (int s = 0; s < writers.size(); s++)
+				routed.add(new ArrayList<DocumentInCollection>());
+			return batch -> {
+				for (List<DocumentInCollection> part : routed)
+					part.clear();
+				for (DocumentInCollection doc : batch)
+					routed.get(router.shard(doc, writers.size())).add(doc);
+				for (int s = 0; s < writers.size(); s++) {
+					if (writers.get(s) != null && !routed.get(s).isEmpty())
+						writers.get(s).addDocuments(fields.documents(routed.get(s)));
+				}
+			};
+		}
+		if (chains == null) {
+			IndexedDocument fields = new IndexedDocument(profile);
+			IndexWriter writer = writers.get(0);
+			return batch -> writer.addDocuments(fields.documents(batch));
+		}
+		SharedAnalysis analysis = new SharedAnalysis(chains, profile);
+		return batch -> {
+			analysis.tokenize(batch);
+			for (int c = 0; c < writers.size(); c++)
+				writers.get(c).addDocuments(analysis.documents(c));
+		};
+	}
+
+	// adds all documents to the writers, they are neither committed nor closed
+	public Stats index(Iterator<DocumentInCollection> docs) throws IOException {
+		long start = System.nanoTime();
+		long count = 0;
+		long bytes = 0;
+		if (threads == 1) {
+			BatchSink sink = newSink();
+			List<DocumentInCollection> batch = new ArrayList<DocumentInCollection>(batchSize);
+			while (docs.hasNext()) {
+				DocumentInCollection doc = docs.next();
+				batch.add(doc);
+				count++;
+				bytes += size(doc);
+				if (batch.size() == batchSize || !docs.hasNext()) {
+					sink.add(batch);
+					batch.clear();
+				}
+			}
+			return new Stats(count, bytes, System.nanoTime() - start);
+		}
+
+		BlockingQueue<List<DocumentInCollection>> queue = new ArrayBlockingQueue<List<DocumentInCollection>>(2 * threads);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Void>> workers = new ArrayList<Future<Void>>();
+		for (int i = 0; i < threads; i++) {
+			workers.add(pool.submit(() -> {
+				BatchSink sink = newSink();
+				for (List<DocumentInCollection> batch = queue.take(); batch != END; batch = queue.take())
+					sink.add(batch);
+				return null;
+			}));
+		}
+		try {
+			List<DocumentInCollection> batch = new ArrayList<DocumentInCollection>(batchSize);
+			while (docs.hasNext()) {
+				DocumentInCollection doc = docs.next();
+				batch.add(doc);
+				count++;
+				bytes += size(doc);
+				if (batch.size() == batchSize) {
+					put(queue, batch, workers);
+					batch = new ArrayList<DocumentInCollection>(batchSize);
+				}
+			}
+			if (!batch.isEmpty())
+				put(queue, batch, workers);
+			for (int i = 0; i < threads; i++)
+				put(queue, END, workers);
+			for (Future<Void> worker : workers)
+				get(worker);
+		} finally {
+			pool.shutdownNow();
+		}
+		return new Stats(count, bytes, System.nanoTime() - start);
+	}
+
+	// hands a batch to the workers, failing instead of blocking forever if a worker died
+	private static void put(BlockingQueue<List<DocumentInCollection>> queue, List<DocumentInCollection> batch, List<Future<Void>> workers) throws IOException {
+		try {
+			while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+				for (Future<Void> worker : workers) {
+					if (worker.isDone())
+						get(worker);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+
+	private static void get(Future<Void> worker) throws IOException {
+		try {
+			worker.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	// UTF-8 size of the text fields of a document
+	private static long size(DocumentInCollection doc) {
+		return utf8Length(doc.getTitle()) + utf8Length(doc.getAbstractText()) + utf8Length(doc.getQuery());
+	}
+
+	private static long utf8Length(String s) {
+		if (s == null)
+			return 0;
+		long length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80)
+				length++;
+			else if (c < 0x800)
+				length += 2;
+			else if (Character.isHighSurrogate(c)) {
+				length += 4;
+				i++;
+			}
+			else
+				length += 3;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ * Compact binary snapshot of a document collection
+ * Layout, big-endian:
+ *  header  magic, version, source size, source modification time, the
+ *          SHA-1 of the source as 40 hex digits, count
+ *  offsets count + 1 ints, the start of every record and the end of the last
+ *  records task number, flags (bit 0: relevant) and the length-prefixed
+ *          UTF-8 key, title, abstract and query (length -1 for null)
+ * The file is memory-mapped and documents are decoded only when accessed,
+ * so opening a snapshot costs the same whatever the size of the collection.
+ * A snapshot is current while the source has the same size and content
+ * hash, the modification time only saves hashing an unchanged file again
+ * (see IndexCatalog.contentHash). A single mapping limits snapshots to 2 GB,
+ * writing a larger one fails.
+ */
+package ir_course;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+public class CorpusSnapshot extends AbstractList<DocumentInCollection> implements RandomAccess {
+
+	private static final int MAGIC = 0x49524353; // "IRCS"
+	private static final int VERSION = 2;
+	private static final int HASH_SIZE = 40;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + HASH_SIZE + 4;
+
+	private final Path file;
+	private final MappedByteBuffer buffer;
+	private final int size;
+	private final long sourceSize;
+	private final String sourceHash;
+
+	private CorpusSnapshot(Path file, MappedByteBuffer buffer) {
+		this.file = file;
+		this.buffer = buffer;
+		this.sourceSize = buffer.getLong(8);
+		this.sourceHash = hash(buffer);
+		this.size = buffer.getInt(HEADER_SIZE - 4);
+	}
+
+	// the snapshot file kept next to a corpus file
+	public static Path pathFor(Path source) {
+		return source.resolveSibling(source.getFileName() + ".snapshot");
+	}
+
+	// maps the snapshot of the source, writing it first if it is missing or stale
+	public static CorpusSnapshot open(Path source, Path snapshot) throws IOException {
+		if (!isUpToDate(source, snapshot))
+			write(source, snapshot);
+		return map(snapshot);
+	}
+
+	// maps an existing snapshot file, the mapping stays valid after the channel is closed
+	public static CorpusSnapshot map(Path snapshot) throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+				throw new IOException("not a corpus snapshot: " + snapshot);
+			return new CorpusSnapshot(snapshot, buffer);
+		}
+	}
+
+	// true if this snapshot was written from the source as it is now
+	public boolean isUpToDate(Path source) throws IOException {
+		return sourceSize == Files.size(source) && sourceHash.equals(IndexCatalog.contentHash(source));
+	}
+
+	// true if the snapshot file was written from the source as it is now
+	public static boolean isUpToDate(Path source, Path snapshot) throws IOException {
+		if (!Files.isRegularFile(snapshot) || Files.size(snapshot) < HEADER_SIZE)
+			return false;
+		try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) >= 0)
+				;
+			return header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+					&& header.getLong(8) == Files.size(source)
+					&& hash(header).equals(IndexCatalog.contentHash(source));
+		}
+	}
+
+	// the source hash of a header
+	private static String hash(ByteBuffer header) {
+		byte[] hash = new byte[HASH_SIZE];
+		ByteBuffer view = header.duplicate();
+		view.position(24);
+		view.get(hash);
+		return new String(hash, StandardCharsets.US_ASCII);
+	}
+
+	// parses the source once and writes its snapshot, replacing the old one atomically
+	public static void write(Path source, Path snapshot) throws IOException {
+		long sourceSize = Files.size(source);
+		long sourceModified = Files.getLastModifiedTime(source).toMillis();
+		String sourceHash = IndexCatalog.contentHash(source);
+		// unique names, so concurrent writers never share a file
+		String unique = "." + UUID.randomUUID();
+		Path records = snapshot.resolveSibling(snapshot.getFileName() + unique + ".records");
+		Path tmp = snapshot.resolveSibling(snapshot.getFileName() + unique + ".tmp");
+		try {
+			// records go to a side file first, the offset table is only known at the end
+			IntList offsets = new IntList();
+			try (DocumentCollectionReader reader = new DocumentCollectionReader(source.toString());
+					CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(records), 1 << 16));
+					DataOutputStream out = new DataOutputStream(counter)) {
+				while (reader.hasNext()) {
+					DocumentInCollection doc = reader.next();
+					offsets.add(offset(counter.count, source));
+					out.writeInt(doc.getSearchTaskNumber());
+					out.writeByte(doc.isRelevant() ? 1 : 0);
+					writeString(out, doc.getKey());
+					writeString(out, doc.getTitle());
+					writeString(out, doc.getAbstractText());
+					writeString(out, doc.getQuery());
+				}
+				offsets.add(offset(counter.count, source));
+			}
+			int count = offsets.size() - 1;
+			long base = HEADER_SIZE + 4L * offsets.size();
+			offset(base + offsets.get(count), source);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(sourceSize);
+				out.writeLong(sourceModified);
+				out.write(sourceHash.getBytes(StandardCharsets.US_ASCII));
+				out.writeInt(count);
+				for (int i = 0; i < offsets.size(); i++)
+					out.writeInt((int) (base + offsets.get(i)));
+				Files.copy(records, (OutputStream) out);
+			}
+			Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(records);
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// decodes the index-th document
+	public DocumentInCollection get(int index) {
+		ByteBuffer record = record(index);
+		int task = record.getInt();
+		boolean relevant = (record.get() & 1) != 0;
+		String key = readString(record);
+		DocumentInCollection doc = new DocumentInCollection(readString(record), readString(record), task, readString(record), relevant);
+		doc.setKey(key);
+		return doc;
+	}
+
+	// the key of the index-th document, decoding nothing else
+	public String getKey(int index) {
+		ByteBuffer record = record(index);
+		record.position(record.position() + 5);
+		return readString(record);
+	}
+
+	// the title of the index-th document, decoding nothing else
+	public String getTitle(int index) {
+		ByteBuffer record = record(index);
+		record.position(record.position() + 5);
+		skipString(record);
+		return readString(record);
+	}
+
+	// a private view positioned at the start of the index-th record, so concurrent
+	// readers do not share a position
+	private ByteBuffer record(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("document " + index + " of " + size);
+		ByteBuffer record = buffer.duplicate();
+		record.position(buffer.getInt(HEADER_SIZE + 4 * index));
+		return record;
+	}
+
+	// a position in the snapshot, which has to be addressable by a single mapping
+	private static int offset(long position, Path source) throws IOException {
+		if (position > Integer.MAX_VALUE)
+			throw new IOException("the snapshot of " + source + " would exceed 2 GB");
+		return (int) position;
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer record) {
+		int length = record.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void skipString(ByteBuffer record) {
+		int length = record.getInt();
+		if (length > 0)
+			record.position(record.position() + length);
+	}
+
+	// counts the bytes written as a long, DataOutputStream.size() stops at 2 GB
+	private static class CountingOutputStream extends FilterOutputStream {
+		long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	// growable list of primitive ints
+	private static class IntList {
+		private int[] values = new int[1024];
+		private int size;
+
+		void add(int value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		int get(int i) {
+			return values[i];
+		}
+
+		int size() {
+			return size;
+		}
+	}
+
+	public String toString() {
+		return "CorpusSnapshot(" + file + ", " + size + " documents)";
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Compares index and query timings of the Directory backends
+ * Every backend indexes the corpus into a scratch directory with the same
+ * ranking method and then runs the queries repeatedly against it, with the
+ * result cache off so every repetition is searched.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+public class DirectoryComparison {
+
+	private static final String METHOD = "4";
+	private static final int WARMUP = 20;
+	private static final int REPEATS = 100;
+
+	public static void run(String corpus, int taskNumber, String[] queries, PrintStream out) throws IOException {
+		out.println("backend  index ms  query ms (mean of " + REPEATS + " x " + queries.length + " queries)");
+		PrintStream discard = new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		});
+		// untimed build so the first backend does not pay for class loading and JIT
+		Path warmup = Paths.get("index", "compare-warmup");
+		try (LuceneSearchApp engine = new LuceneSearchApp();
+				Stream<DocumentInCollection> docs = DocumentCollectionParser.load(corpus, Metrics.get("corpus"))) {
+			engine.out = discard;
+			engine.setResultCache(null);
+			engine.setDirectoryType(DirectoryType.RAM);
+			engine.setRankingMethod(METHOD, taskNumber);
+			engine.index(docs::iterator, warmup);
+			searchAll(engine, queries);
+		} finally {
+			DirectoryType.RAM.remove(warmup);
+		}
+		for (DirectoryType type : DirectoryType.values()) {
+			Path path = Paths.get("index", "compare-" + type.name().toLowerCase(Locale.ROOT));
+			type.remove(path);
+			try (LuceneSearchApp engine = new LuceneSearchApp()) {
+				engine.out = discard;
+				engine.setResultCache(null);
+				engine.setDirectoryType(type);
+				engine.setRankingMethod(METHOD, taskNumber);
+
+				long start = System.nanoTime();
+				try (Stream<DocumentInCollection> docs = DocumentCollectionParser.load(corpus, Metrics.get("corpus"))) {
+					engine.index(docs::iterator, path);
+				}
+				double indexMillis = (System.nanoTime() - start) / 1e6;
+
+				for (int i = 0; i < WARMUP; i++)
+					searchAll(engine, queries);
+				start = System.nanoTime();
+				for (int i = 0; i < REPEATS; i++)
+					searchAll(engine, queries);
+				double queryMillis = (System.nanoTime() - start) / 1e6 / (REPEATS * queries.length);
+
+				out.println(String.format(Locale.ROOT, "%-7s  %8.1f  %8.3f", type.name().toLowerCase(Locale.ROOT), indexMillis, queryMillis));
+			} finally {
+				type.remove(path);
+			}
+		}
+	}
+
+	private static void searchAll(LuceneSearchApp engine, String[] queries) throws IOException {
+		for (String query : queries)
+			engine.search(query, null, query, null, null, null);
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Directory implementations an index can be written to and searched from
+ *  FS    the platform default picked by FSDirectory.open
+ *  MMAP  memory-mapped files, for large read-mostly indexes
+ *  NIO   positional NIO reads, for constrained address spaces
+ *  RAM   heap only, for throwaway experiments; lives until it is removed
+ *        or the JVM exits
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.IOUtils;
+
+public enum DirectoryType {
+	FS, MMAP, NIO, RAM;
+
+	// heap directories by index path, shared by every engine of the process
+	private static final Map<Path, RAMDirectory> ramDirectories = new ConcurrentHashMap<Path, RAMDirectory>();
+
+	// opens the directory for the index at the given path, the caller closes it
+	public Directory open(Path path) throws IOException {
+		switch (this) {
+		case MMAP:
+			return new MMapDirectory(path);
+		case NIO:
+			return new NIOFSDirectory(path);
+		case RAM:
+			// closing a RAMDirectory drops its files, so callers only close a view of it
+			RAMDirectory directory = ramDirectories.computeIfAbsent(path.toAbsolutePath().normalize(), p -> new RAMDirectory());
+			return new FilterDirectory(directory) {
+				public void close() {
+				}
+			};
+		default:
+			return FSDirectory.open(path);
+		}
+	}
+
+	// deletes the index at the given path, a heap directory is dropped with its files
+	public void remove(Path path) throws IOException {
+		if (this == RAM) {
+			RAMDirectory directory = ramDirectories.remove(path.toAbsolutePath().normalize());
+			if (directory != null)
+				directory.close();
+		} else {
+			IOUtils.rm(path);
+		}
+	}
+
+	// true if the index survives the JVM and needs a directory on disk
+	public boolean isPersistent() {
+		return this != RAM;
+	}
+
+	// parses a command line value such as "mmap"
+	public static DirectoryType parse(String name) {
+		return valueOf(name.toUpperCase(Locale.ROOT));
+	}
+}
@@ -8,52 +8,38 @@
 package ir_course;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
-
-public class DocumentCollectionParser extends DefaultHandler {
+public class DocumentCollectionParser {
 	
-	private List<DocumentInCollection> docs;
+	// mapped snapshots by collection file, shared by every engine of the process
+	private static final Map<Path, CorpusSnapshot> snapshots = new HashMap<Path, CorpusSnapshot>();
 	
-	private boolean item;
-	private boolean title;
-	private boolean abstractText;
-	private boolean searchTaskNumber;
-	private boolean query;
-	private boolean relevance;
-	
-	private String currentText;
-	private DocumentInCollection currentDoc;
+	private List<DocumentInCollection> docs;
 	
 	public DocumentCollectionParser() {
-		this.docs = new LinkedList<DocumentInCollection>();
-		
-		this.item = false;
-		this.title = false;
-		this.abstractText = false;
-		this.searchTaskNumber = false;
-		this.query = false;
-		this.relevance = false;
+		this.docs = new ArrayList<DocumentInCollection>();
 	}
 	
 	// parses the document collection in the given URI
 	public void parse(String uri) {
-		try {
-			SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
-			parser.parse(uri, this);
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-		} catch (SAXException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
+		try (DocumentCollectionReader reader = new DocumentCollectionReader(uri)) {
+			while (reader.hasNext())
+				docs.add(reader.next());
+		} catch (IOException | IllegalStateException e) {
 			e.printStackTrace();
 		}
 	}
@@ -63,62 +49,66 @@ public class DocumentCollectionParser extends DefaultHandler {
 		return this.docs;
 	}
 	
-	
-	// methods for the SAX parser below
-	
-	public void startElement(String uri, String localName, String qName, Attributes attributes) {
-		this.currentText = "";
-		if (qName.equals("item")) {
-			this.item = true;
-			this.currentDoc = new DocumentInCollection();
+	// the documents of a local collection file through its binary snapshot, which is
+	// written next to the file or rewritten first when it is missing or stale;
+	// collections that cannot be snapshotted are streamed from the XML
+	public static Stream<DocumentInCollection> load(String uri, Metrics metrics) throws IOException {
+		CorpusSnapshot found;
+		try {
+			found = snapshot(uri);
+		} catch (IOException e) {
+			// e.g. a read-only directory
+			found = null;
 		}
-		else if (qName.equals("title"))
-			this.title = true;
-		else if (qName.equals("abstract"))
-			this.abstractText = true;
-		else if (qName.equals("search_task_number"))
-			this.searchTaskNumber = true;
-		else if (qName.equals("query"))
-			this.query = true;
-		else if (qName.equals("relevance"))
-			this.relevance = true;
+		if (found == null)
+			return stream(uri, metrics);
+		CorpusSnapshot snapshot = found;
+		return IntStream.range(0, snapshot.size()).mapToObj(i -> {
+			long start = metrics.start();
+			DocumentInCollection doc = snapshot.get(i);
+			metrics.stop(Metrics.Phase.PARSE, start);
+			metrics.count(Metrics.Counter.DOCS_PARSED, 1);
+			return doc;
+		});
 	}
 	
-	public void endElement(String uri, String localName, String qName)  {
-		this.currentText = this.currentText.trim();
-		if (qName.equals("item")) {
-			this.item = false;
-			if (this.currentDoc.getTitle() != null)
-				docs.add(this.currentDoc);
-		}
-		else if (qName.equals("title")) {
-			this.currentDoc.setTitle(this.currentText);
-			this.title = false;
-		}
-		else if (qName.equals("abstract")) {
-			this.currentDoc.setAbstractText(this.currentText);
-			this.abstractText = false;
-		}
-		else if (qName.equals("search_task_number")) {
-			this.currentDoc.setSearchTaskNumber(Integer.valueOf(this.currentText));
-			this.searchTaskNumber = false;
-		}
-		else if (qName.equals("query")) {
-			this.currentDoc.setQuery(this.currentText);
-			this.query = false;
+	// the up-to-date snapshot of a local collection file, null for other URIs
+	public static CorpusSnapshot snapshot(String uri) throws IOException {
+		Path source;
+		try {
+			source = Paths.get(uri).toAbsolutePath().normalize();
+		} catch (InvalidPathException e) {
+			return null;
 		}
-		else if (qName.equals("relevance")) {
-			if (Integer.valueOf(this.currentText) == 1)
-				this.currentDoc.setRelevant(true);
-			this.relevance = false;
+		if (!Files.isRegularFile(source))
+			return null;
+		synchronized (snapshots) {
+			CorpusSnapshot snapshot = snapshots.get(source);
+			if (snapshot == null || !snapshot.isUpToDate(source)) {
+				snapshot = CorpusSnapshot.open(source, CorpusSnapshot.pathFor(source));
+				snapshots.put(source, snapshot);
+			}
+			return snapshot;
 		}
 	}
 	
-	public void characters(char[] ch, int start, int length) {
-		String text = "";
-		for (int i=0; i<length; i++)
-			text += ch[start+i];
-		this.currentText += text;
+	// streams the documents of the collection in the given URI one at a time,
+	// the stream must be closed to release the underlying file
+	public static Stream<DocumentInCollection> stream(String uri) throws IOException {
+		return stream(uri, Metrics.get("corpus"));
+	}
+	
+	// streams the documents, recording parse time and documents in metrics
+	public static Stream<DocumentInCollection> stream(String uri, Metrics metrics) throws IOException {
+		DocumentCollectionReader reader = new DocumentCollectionReader(uri, metrics);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(() -> {
+					try {
+						reader.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
 	}
 
-}
\ No newline at end of file
+}
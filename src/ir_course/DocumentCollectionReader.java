@@ -0,0 +1,158 @@
+/*
+ * Streaming (pull) reader for a document collection
+ * Hands out one DocumentInCollection at a time so that the whole
+ * collection never has to be held in memory.
+ */
+package ir_course;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+public class DocumentCollectionReader implements Iterator<DocumentInCollection>, Closeable {
+
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+	private final Metrics metrics;
+	private final InputStream in;
+	private final XMLStreamReader xml;
+
+	// text buffer reused for every element of the collection
+	private final StringBuilder currentText = new StringBuilder(1024);
+	private DocumentInCollection currentDoc;
+	private DocumentInCollection next;
+	private boolean done;
+	// documents seen so far per task and title, to give repeated titles distinct keys
+	private final Map<String, Integer> occurrences = new HashMap<String, Integer>();
+
+	// opens the document collection in the given URI (a file path or a URL)
+	public DocumentCollectionReader(String uri) throws IOException {
+		this(uri, Metrics.get("corpus"));
+	}
+
+	// opens the document collection, parse time and documents are recorded in metrics
+	public DocumentCollectionReader(String uri, Metrics metrics) throws IOException {
+		this.metrics = metrics;
+		File file = new File(uri);
+		this.in = file.exists() ? new FileInputStream(file) : new URL(uri).openStream();
+		try {
+			this.xml = FACTORY.createXMLStreamReader(this.in);
+		} catch (XMLStreamException e) {
+			this.in.close();
+			throw new IOException(e);
+		}
+	}
+
+	public boolean hasNext() {
+		if (this.next == null && !this.done)
+			this.next = readNext();
+		return this.next != null;
+	}
+
+	public DocumentInCollection next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		DocumentInCollection doc = this.next;
+		this.next = null;
+		return doc;
+	}
+
+	public void close() throws IOException {
+		this.done = true;
+		try {
+			this.xml.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			this.in.close();
+		}
+	}
+
+	// advances the pull parser until the next complete <item> has been read
+	private DocumentInCollection readNext() {
+		long start = metrics.start();
+		try {
+			while (this.xml.hasNext()) {
+				switch (this.xml.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					this.currentText.setLength(0);
+					if (this.xml.getLocalName().equals("item"))
+						this.currentDoc = new DocumentInCollection();
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					this.currentText.append(this.xml.getTextCharacters(), this.xml.getTextStart(), this.xml.getTextLength());
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					DocumentInCollection doc = endElement(this.xml.getLocalName());
+					if (doc != null) {
+						metrics.stop(Metrics.Phase.PARSE, start);
+						metrics.count(Metrics.Counter.DOCS_PARSED, 1);
+						return doc;
+					}
+					break;
+				default:
+					break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException(e);
+		}
+		this.done = true;
+		return null;
+	}
+
+	// returns the finished document when an </item> is reached
+	private DocumentInCollection endElement(String name) {
+		if (this.currentDoc == null)
+			return null;
+		if (name.equals("item")) {
+			DocumentInCollection doc = this.currentDoc;
+			this.currentDoc = null;
+			if (doc.getTitle() != null) {
+				String key = DocumentInCollection.key(doc.getSearchTaskNumber(), doc.getTitle(), 0);
+				Integer seen = this.occurrences.get(key);
+				this.occurrences.put(key, seen == null ? 1 : seen + 1);
+				doc.setKey(seen == null ? key : DocumentInCollection.key(doc.getSearchTaskNumber(), doc.getTitle(), seen));
+				return doc;
+			}
+		}
+		else if (name.equals("title"))
+			this.currentDoc.setTitle(currentText());
+		else if (name.equals("abstract"))
+			this.currentDoc.setAbstractText(currentText());
+		else if (name.equals("search_task_number"))
+			this.currentDoc.setSearchTaskNumber(Integer.parseInt(currentText()));
+		else if (name.equals("query"))
+			this.currentDoc.setQuery(currentText());
+		else if (name.equals("relevance")) {
+			if (Integer.parseInt(currentText()) == 1)
+				this.currentDoc.setRelevant(true);
+		}
+		return null;
+	}
+
+	// trimmed contents of the text buffer
+	private String currentText() {
+		int start = 0;
+		int end = this.currentText.length();
+		while (start < end && this.currentText.charAt(start) <= ' ')
+			start++;
+		while (end > start && this.currentText.charAt(end - 1) <= ' ')
+			end--;
+		return this.currentText.substring(start, end);
+	}
+}
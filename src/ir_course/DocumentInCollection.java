@@ -5,6 +5,10 @@
  */
 package ir_course;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 public class DocumentInCollection {
 
 	private String title;
@@ -12,6 +16,7 @@ public class DocumentInCollection {
 	private int searchTaskNumber;
 	private String query;
 	private boolean relevant;
+	private String key;
 	
 	public DocumentInCollection() {
 		this(null, null, 0, null, false);
@@ -65,6 +70,51 @@ public class DocumentInCollection {
 		this.relevant = relevant;
 	}
 
+	// stable identifier of the document, derived from the search task and the title
+	public String getKey() {
+		if (key == null)
+			key = key(searchTaskNumber, title, 0);
+		return key;
+	}
+
+	public void setKey(String key) {
+		this.key = key;
+	}
+
+	// 64-bit FNV-1a hash of the indexed content, tells whether a document with the same key changed
+	public long getContentHash() {
+		long hash = 0xcbf29ce484222325L;
+		hash = hash(hash, title);
+		hash = hash(hash, abstractText);
+		hash = hash(hash, query);
+		hash = (hash ^ searchTaskNumber) * 0x100000001b3L;
+		return (hash ^ (relevant ? 1 : 0)) * 0x100000001b3L;
+	}
+
+	private static long hash(long hash, String s) {
+		if (s != null) {
+			for (int i = 0; i < s.length(); i++)
+				hash = (hash ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		// separates the fields, so text moving between them changes the hash
+		return (hash ^ 0xffff) * 0x100000001b3L;
+	}
+
+	// key of the occurrence-th document with this search task and title in a collection
+	public static String key(int searchTaskNumber, String title, int occurrence) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(String.valueOf(title).getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder().append(searchTaskNumber).append('-');
+			for (int i = 0; i < 6; i++)
+				sb.append(String.format("%02x", hash[i]));
+			if (occurrence > 0)
+				sb.append('-').append(occurrence);
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	public String toString() {
 		return "Title: "+title+"\n abstract: "+abstractText+"\n search task number: "+searchTaskNumber+"\n query: "+query+"\n relevant: "+relevant;
 	}
@@ -0,0 +1,46 @@
+/*
+ * Display fields of the documents, kept outside the index
+ * Lean indexes store no text, so the title of a hit is looked up by its key
+ * in the memory-mapped corpus snapshot instead; only the key to record
+ * table lives on the heap, records are decoded when a title is asked for.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DocumentStore {
+
+	private final CorpusSnapshot snapshot;
+	private final Map<String, Integer> records;
+
+	public DocumentStore(CorpusSnapshot snapshot) {
+		this.snapshot = snapshot;
+		this.records = new HashMap<String, Integer>(snapshot.size() * 4 / 3 + 1);
+		for (int i = 0; i < snapshot.size(); i++)
+			records.put(snapshot.getKey(i), i);
+	}
+
+	// the store of a corpus file, null if the corpus has no snapshot (it is not a local file)
+	public static DocumentStore open(String corpus) throws IOException {
+		CorpusSnapshot snapshot = DocumentCollectionParser.snapshot(corpus);
+		return snapshot != null ? new DocumentStore(snapshot) : null;
+	}
+
+	// the title of the document with the key, null if it is not in the store
+	public String getTitle(String key) {
+		Integer record = records.get(key);
+		return record != null ? snapshot.getTitle(record) : null;
+	}
+
+	// the document with the key, null if it is not in the store
+	public DocumentInCollection get(String key) {
+		Integer record = records.get(key);
+		return record != null ? snapshot.get(record) : null;
+	}
+
+	public int size() {
+		return records.size();
+	}
+}
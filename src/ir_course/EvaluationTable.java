@@ -0,0 +1,122 @@
+/*
+ * Per-query measures of several runs (ranking methods) over the same queries
+ * All values live in one double array per run, indexed by query and then
+ * by Evaluator column. Runs may be evaluated concurrently, each query of a
+ * run is written by a single thread, and means are summed in query order so
+ * they do not depend on the order the queries finished in.
+ */
+package ir_course;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.util.FixedBitSet;
+
+public class EvaluationTable {
+
+	private final Evaluator evaluator;
+	private final String[] runs;
+	private final String[] queries;
+	private final Map<String, Integer> runIndex = new HashMap<String, Integer>();
+	private final Map<String, Integer> queryIndex = new HashMap<String, Integer>();
+	private final double[][] values;
+	private final boolean[][] evaluated;
+
+	public EvaluationTable(Evaluator evaluator, String[] runs, String[] queries) {
+		this.evaluator = evaluator;
+		this.runs = runs.clone();
+		this.queries = queries.clone();
+		for (int i = 0; i < runs.length; i++)
+			runIndex.put(runs[i], i);
+		for (int i = 0; i < queries.length; i++)
+			queryIndex.put(queries[i], i);
+		this.values = new double[runs.length][queries.length * evaluator.size()];
+		this.evaluated = new boolean[runs.length][queries.length];
+	}
+
+	public Evaluator getEvaluator() {
+		return evaluator;
+	}
+
+	public String[] getRuns() {
+		return runs.clone();
+	}
+
+	public String[] getQueries() {
+		return queries.clone();
+	}
+
+	// evaluates the ranked list of a query of a run in place
+	public void evaluate(String run, String query, RankedList hits, FixedBitSet relevant, int relevantCount) {
+		int r = index(runIndex, run, "run");
+		int q = index(queryIndex, query, "query");
+		evaluator.evaluate(hits.docIds(), hits.scores(), hits.size(), relevant, relevantCount, values[r], q * evaluator.size());
+		synchronized (evaluated[r]) {
+			evaluated[r][q] = true;
+		}
+	}
+
+	// the value of a measure for one query of a run
+	public double get(int run, int query, int column) {
+		return values[run][query * evaluator.size() + column];
+	}
+
+	// true once the query of the run has been evaluated
+	public boolean isEvaluated(int run, int query) {
+		synchronized (evaluated[run]) {
+			return evaluated[run][query];
+		}
+	}
+
+	// the values of a measure for every query of a run, in query order, 0 for queries not evaluated
+	public double[] perQuery(int run, int column) {
+		double[] perQuery = new double[queries.length];
+		for (int q = 0; q < queries.length; q++)
+			perQuery[q] = get(run, q, column);
+		return perQuery;
+	}
+
+	// the mean of a measure over the evaluated queries of a run, MAP for Evaluator.AP
+	public double mean(int run, int column) {
+		double sum = 0;
+		int count = 0;
+		synchronized (evaluated[run]) {
+			for (int q = 0; q < queries.length; q++) {
+				if (evaluated[run][q]) {
+					sum += get(run, q, column);
+					count++;
+				}
+			}
+		}
+		return count == 0 ? 0 : sum / count;
+	}
+
+	// one line per run with the mean of every measure
+	public void print(PrintStream out) {
+		String[] columns = evaluator.columns();
+		int width = 12;
+		for (String run : runs)
+			width = Math.max(width, run.length() + 1);
+		String runFormat = "%-" + width + "s";
+		StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, runFormat, "run"));
+		for (String column : columns)
+			sb.append(String.format(Locale.ROOT, " %8s", column.equals("ap") ? "map" : column));
+		out.println(sb);
+		for (int r = 0; r < runs.length; r++) {
+			sb.setLength(0);
+			sb.append(String.format(Locale.ROOT, runFormat, runs[r]));
+			for (int c = 0; c < columns.length; c++)
+				sb.append(String.format(Locale.ROOT, " %8.4f", mean(r, c)));
+			out.println(sb);
+		}
+	}
+
+	private static int index(Map<String, Integer> index, String name, String kind) {
+		Integer i = index.get(name);
+		if (i == null)
+			throw new IllegalArgumentException("unknown " + kind + ": " + name);
+		return i;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Retrieval quality measures of a ranked run, computed in one pass
+ * For a run of parallel doc id and score arrays (best hit first) and the
+ * relevant documents of its topic, a single walk down the ranks yields
+ *  AP, R-precision, reciprocal rank, P@k and nDCG@k for every cutoff k
+ *  and the interpolated 11-point precision/recall curve.
+ * The measures are written into a caller-provided double array, laid out
+ * as described by columns(), so tables of many runs need no boxing.
+ */
+package ir_course;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.FixedBitSet;
+
+public class Evaluator {
+
+	public static final int AP = 0;
+	public static final int R_PRECISION = 1;
+	public static final int RECIPROCAL_RANK = 2;
+
+	private final int[] cutoffs;
+	private final int maxCutoff;
+	private final String[] columns;
+	// 1 / log2(rank + 1) for ranks 1..maxCutoff, and its prefix sums (the ideal DCG)
+	private final double[] discount;
+	private final double[] idealDcg;
+
+	public Evaluator() {
+		this(5, 10, 20);
+	}
+
+	// P@k and nDCG@k are computed for every given cutoff k
+	public Evaluator(int... cutoffs) {
+		this.cutoffs = cutoffs.clone();
+		Arrays.sort(this.cutoffs);
+		if (this.cutoffs.length > 0 && this.cutoffs[0] <= 0)
+			throw new IllegalArgumentException("cutoffs must be positive: " + Arrays.toString(cutoffs));
+		this.maxCutoff = this.cutoffs.length > 0 ? this.cutoffs[this.cutoffs.length - 1] : 0;
+		this.discount = new double[maxCutoff + 1];
+		this.idealDcg = new double[maxCutoff + 1];
+		for (int rank = 1; rank <= maxCutoff; rank++) {
+			discount[rank] = 1 / (Math.log(rank + 1) / Math.log(2));
+			idealDcg[rank] = idealDcg[rank - 1] + discount[rank];
+		}
+		this.columns = new String[3 + 2 * this.cutoffs.length + 11];
+		columns[AP] = "ap";
+		columns[R_PRECISION] = "r-prec";
+		columns[RECIPROCAL_RANK] = "rr";
+		for (int i = 0; i < this.cutoffs.length; i++) {
+			columns[precisionColumn(i)] = "p@" + this.cutoffs[i];
+			columns[ndcgColumn(i)] = "ndcg@" + this.cutoffs[i];
+		}
+		for (int i = 0; i <= 10; i++)
+			columns[curveColumn(i)] = "ip@" + (i < 10 ? "0." + i : "1.0");
+	}
+
+	// names of the measures, in the order they are written
+	public String[] columns() {
+		return columns.clone();
+	}
+
+	public int size() {
+		return columns.length;
+	}
+
+	public int[] cutoffs() {
+		return cutoffs.clone();
+	}
+
+	// column of P@k for the i-th cutoff
+	public int precisionColumn(int i) {
+		return 3 + i;
+	}
+
+	// column of nDCG@k for the i-th cutoff
+	public int ndcgColumn(int i) {
+		return 3 + cutoffs.length + i;
+	}
+
+	// column of the interpolated precision at recall level / 10
+	public int curveColumn(int level) {
+		return 3 + 2 * cutoffs.length + level;
+	}
+
+	public double[] evaluate(RankedList run, FixedBitSet relevant, int relevantCount) {
+		double[] values = new double[size()];
+		evaluate(run.docIds(), run.scores(), run.size(), relevant, relevantCount, values, 0);
+		return values;
+	}
+
+	// writes the measures of the first size ranks of the run into values[offset..offset + size());
+	// the ranks are taken in array order, scores only have to be sorted along with them
+	public void evaluate(int[] docIds, float[] scores, int size, FixedBitSet relevant, int relevantCount, double[] values, int offset) {
+		Arrays.fill(values, offset, offset + columns.length, 0);
+		if (relevantCount == 0)
+			return;
+		// precision at the rank of every relevant document retrieved, for the curve
+		double[] precisionAtHit = new double[Math.min(relevantCount, size)];
+		int hits = 0;
+		double sumPrecision = 0;
+		double dcg = 0;
+		int cutoff = 0;
+		for (int rank = 1; rank <= size; rank++) {
+			if (relevant.get(docIds[rank - 1])) {
+				hits++;
+				double precision = (double) hits / rank;
+				sumPrecision += precision;
+				if (hits == 1)
+					values[offset + RECIPROCAL_RANK] = 1. / rank;
+				if (rank <= maxCutoff)
+					dcg += discount[rank];
+				precisionAtHit[hits - 1] = precision;
+			}
+			if (rank == relevantCount)
+				values[offset + R_PRECISION] = (double) hits / relevantCount;
+			while (cutoff < cutoffs.length && cutoffs[cutoff] == rank) {
+				values[offset + precisionColumn(cutoff)] = (double) hits / rank;
+				values[offset + ndcgColumn(cutoff)] = dcg / idealDcg[Math.min(rank, relevantCount)];
+				cutoff++;
+			}
+		}
+		// cutoffs beyond the end of the run count the missing ranks as not relevant
+		for (; cutoff < cutoffs.length; cutoff++) {
+			values[offset + precisionColumn(cutoff)] = (double) hits / cutoffs[cutoff];
+			values[offset + ndcgColumn(cutoff)] = dcg / idealDcg[Math.min(cutoffs[cutoff], relevantCount)];
+		}
+		if (size < relevantCount)
+			values[offset + R_PRECISION] = (double) hits / relevantCount;
+		values[offset + AP] = sumPrecision / relevantCount;
+		// interpolated precision at recall r is the best precision at any recall >= r,
+		// which is always reached at the rank of a relevant document
+		double max = 0;
+		int hit = hits;
+		for (int level = 10; level >= 0; level--) {
+			// relevant documents needed to reach recall level / 10
+			int needed = (level * relevantCount + 9) / 10;
+			while (hit > 0 && hit >= needed) {
+				max = Math.max(max, precisionAtHit[hit - 1]);
+				hit--;
+			}
+			values[offset + curveColumn(level)] = hits >= needed ? max : 0;
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Runs the query x ranking method evaluation matrix in parallel
+ * Every (query, method) pair is an independent task with its own engine.
+ * Output and the averaged curves are merged back in the sequential order,
+ * so the results are identical to running the matrix one pair at a time.
+ * With a run directory, each method's ranked lists go to method<N>.run and
+ * the relevance judgements of the queries to qrels, both in TREC format.
+ */
+package ir_course;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ExperimentExecutor implements Closeable {
+
+	// curve and printed output of a single (query, method) run
+	private static class Run {
+		final double[] curve;
+		final String output;
+
+		Run(double[] curve, String output) {
+			this.curve = curve;
+			this.output = output;
+		}
+	}
+
+	private final String corpus;
+	private final int taskNumber;
+	private final ExecutorService pool;
+	private DirectoryType directoryType = DirectoryType.FS;
+	private Path runDirectory = null;
+	private boolean incremental = false;
+	private IndexingOptions indexing = new IndexingOptions();
+	private int shards = 1;
+	private ShardRouter shardRouter = ShardRouter.HASH;
+	private DocumentStore documentStore = null;
+	private Evaluator evaluator = null;
+	private EvaluationTable evaluationTable = null;
+
+	public ExperimentExecutor(String corpus, int taskNumber, int threads) {
+		this.corpus = corpus;
+		this.taskNumber = taskNumber;
+		this.pool = Executors.newFixedThreadPool(threads);
+	}
+
+	public void setDirectoryType(DirectoryType directoryType) {
+		this.directoryType = directoryType;
+	}
+
+	// writes run files and qrels into the directory, null turns them off
+	public void setRunDirectory(Path runDirectory) {
+		this.runDirectory = runDirectory;
+	}
+
+	// update catalog indexes of an older corpus instead of rebuilding them
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	// profile, codec and writer settings of the indexes, see LuceneSearchApp.setIndexingOptions
+	public void setIndexingOptions(IndexingOptions indexing) {
+		this.indexing = indexing;
+	}
+
+	// splits the indexes into shards, see LuceneSearchApp.setSharding
+	public void setSharding(int shards, ShardRouter router) {
+		this.shards = shards;
+		this.shardRouter = router;
+	}
+
+	// also evaluates every run with all measures of the evaluator, null turns it off
+	public void setEvaluator(Evaluator evaluator) {
+		this.evaluator = evaluator;
+	}
+
+	// per-query measures of the last run(), rows are method1..methodN; null without an evaluator
+	public EvaluationTable getEvaluationTable() {
+		return evaluationTable;
+	}
+
+	// the run file query id of the query-th query
+	private String queryId(int query) {
+		return taskNumber + "." + (query + 1);
+	}
+
+	// runs every query with ranking methods 1..methods, prints the per-run
+	// output to out and returns the average curve of each method
+	public List<double[]> run(String[] queries, int methods, PrintStream out) throws IOException {
+		RunWriter[] runWriters = new RunWriter[methods];
+		evaluationTable = null;
+		if (evaluator != null) {
+			String[] runNames = new String[methods];
+			for (int method = 1; method <= methods; method++)
+				runNames[method - 1] = "method" + method;
+			String[] queryIds = new String[queries.length];
+			for (int query = 0; query < queries.length; query++)
+				queryIds[query] = queryId(query);
+			evaluationTable = new EvaluationTable(evaluator, runNames, queryIds);
+		}
+		EvaluationTable table = evaluationTable;
+		try {
+			if (runDirectory != null) {
+				Files.createDirectories(runDirectory);
+				for (int method = 1; method <= methods; method++)
+					runWriters[method - 1] = new RunWriter(runDirectory.resolve("method" + method + ".run"));
+			}
+			// the analysis chains are indexed together from one tokenization of the corpus, the
+			// engines then find their indexes up to date; incremental updates go chain by chain,
+			// sharded indexes are built shard by shard by the first engine of each chain
+			if (!incremental && shards == 1) {
+				List<String> methodNames = new ArrayList<String>();
+				for (int method = 1; method <= methods; method++)
+					methodNames.add(Integer.toString(method));
+				LuceneSearchApp.buildIndexes(corpus, methodNames, directoryType, indexing);
+			}
+			// lean indexes store no titles, the engines share one store for the log
+			documentStore = indexing.getProfile() == IndexingOptions.Profile.LEAN ? DocumentStore.open(corpus) : null;
+			List<Future<Run>> runs = new ArrayList<Future<Run>>();
+			for (int query = 0; query < queries.length; query++) {
+				for (int method = 1; method <= methods; method++) {
+					String queryText = queries[query];
+					String queryId = queryId(query);
+					String indexingMethod = Integer.toString(method);
+					RunWriter runWriter = runWriters[method - 1];
+					runs.add(pool.submit(() -> runOne(queryId, queryText, indexingMethod, runWriter, table)));
+				}
+			}
+
+			// merge in submission order, the average is summed exactly as in a sequential loop
+			List<double[]> averageCurves = new ArrayList<double[]>();
+			for (int i = 0; i < methods; i++)
+				averageCurves.add(new double[11]);
+			for (int i = 0; i < runs.size(); i++) {
+				Run run = get(runs.get(i));
+				out.print(run.output);
+				double[] baseCurve = averageCurves.get(i % methods);
+				for (int j = 0; j < 11; j++)
+					baseCurve[j] += run.curve[j] / queries.length;
+			}
+			if (runDirectory != null)
+				writeQrels(queries.length);
+			return averageCurves;
+		} finally {
+			for (RunWriter runWriter : runWriters) {
+				if (runWriter != null)
+					runWriter.close();
+			}
+		}
+	}
+
+	// judgements do not depend on the ranking method, any index of the task has them
+	private void writeQrels(int queries) throws IOException {
+		try (LuceneSearchApp engine = new LuceneSearchApp();
+				Writer qrels = Files.newBufferedWriter(runDirectory.resolve("qrels"), StandardCharsets.UTF_8)) {
+			engine.out = new PrintStream(new ByteArrayOutputStream(), false, "UTF-8");
+			engine.setDirectoryType(directoryType);
+			engine.setIncremental(incremental);
+			engine.setIndexingOptions(indexing);
+			engine.setSharding(shards, shardRouter);
+			engine.setRankingMethod("1", taskNumber);
+			engine.openIndex(corpus);
+			for (int query = 0; query < queries; query++)
+				engine.writeQrels(qrels, queryId(query));
+		}
+	}
+
+	public void close() {
+		pool.shutdown();
+	}
+
+	private Run runOne(String queryId, String query, String method, RunWriter runWriter, EvaluationTable table) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(buffer, false, "UTF-8");
+
+		try (LuceneSearchApp engine = new LuceneSearchApp()) {
+			engine.out = out;
+			engine.setDirectoryType(directoryType);
+			engine.setIncremental(incremental);
+			engine.setIndexingOptions(indexing);
+			engine.setDocumentStore(documentStore);
+			engine.setSharding(shards, shardRouter);
+			engine.setRankingMethod(method, taskNumber);
+			engine.setRunWriter(runWriter, "method" + method);
+			engine.setEvaluationTable(table, "method" + method);
+			// reuses the catalog index when this analysis chain was already indexed
+			engine.openIndex(corpus);
+
+			PrecisionRecallList results = engine.search(queryId, query, null, query, null, null, null);
+			double[] precRecCurve = LuceneSearchApp.getInterpolated11stepPrecisionRecallCurve(results);
+
+			out.println("\n--- Method " + method + " ---");
+			LuceneSearchApp.printSingleCurve(precRecCurve, out);
+			engine.printResults(results);
+			out.flush();
+			return new Run(precRecCurve, toString(buffer));
+		}
+	}
+
+	private static String toString(ByteArrayOutputStream buffer) {
+		try {
+			return buffer.toString("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Run get(Future<Run> run) throws IOException {
+		try {
+			return run.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Catalog of persistent indexes under a common root directory
+ * Every index is keyed by a fingerprint of the analysis chain and the corpus
+ * file, so an identical index is built only once and
+ * reopened on later runs. The directory is named after the schema part of
+ * the fingerprint only, so when just the corpus changed an updater can
+ * bring the existing index up to date instead of rebuilding it.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.StopwordAnalyzerBase;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.Version;
+
+public class IndexCatalog {
+
+	// commit user data key holding the fingerprint an index was built for
+	public static final String FINGERPRINT_KEY = "catalog.fingerprint";
+
+	// builds an index for the given fingerprint into an empty directory
+	public interface Builder {
+		void build(Path directory, String fingerprint) throws IOException;
+	}
+
+	// brings an index built for an older corpus up to date with the fingerprint
+	public interface Updater {
+		void update(Path directory, String fingerprint) throws IOException;
+	}
+
+	// builds several indexes of the same corpus at once, each into an empty directory
+	public interface MultiBuilder {
+		void build(List<Integer> chains, List<Path> directories, List<String> fingerprints) throws IOException;
+	}
+
+	// SHA-1 of corpus files in hex, keyed by path, size and modification time
+	private static final Map<String, String> corpusHashes = new ConcurrentHashMap<String, String>();
+
+	private final Path root;
+	private final Map<Path, ReentrantLock> locks = new ConcurrentHashMap<Path, ReentrantLock>();
+
+	public IndexCatalog(Path root) {
+		this.root = root;
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	// returns the directory of an up-to-date index for the given configuration,
+	// building it first if it does not exist yet or is stale
+	public Path open(String chain, Analyzer analyzer, String layout, String corpus, DirectoryType type, Builder builder) throws IOException {
+		return open(chain, analyzer, layout, corpus, type, builder, null);
+	}
+
+	// as above, but a stale index of the same schema is handed to the updater, if any
+	public Path open(String chain, Analyzer analyzer, String layout, String corpus, DirectoryType type, Builder builder, Updater updater) throws IOException {
+		String fingerprint = fingerprint(analyzer, layout, Paths.get(corpus));
+		String prefix = chain + "-collection-";
+		Path dir = directory(chain, analyzer, layout);
+		ReentrantLock lock = locks.computeIfAbsent(dir, k -> new ReentrantLock());
+		lock.lock();
+		try {
+			if (!isUpToDate(type, dir, fingerprint)) {
+				if (updater != null && exists(type, dir)) {
+					if (type.isPersistent())
+						removeStale(prefix, dir);
+					updater.update(dir, fingerprint);
+				}
+				else {
+					clear(type, prefix, dir);
+					builder.build(dir, fingerprint);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		return dir;
+	}
+
+	// as open(), for several chains over the same corpus: the indexes that are missing or
+	// stale are rebuilt by a single call of the builder, which gets their positions in chains
+	public List<Path> openAll(List<String> chains, List<Analyzer> analyzers, String layout, String corpus, DirectoryType type, MultiBuilder builder) throws IOException {
+		List<Path> dirs = new ArrayList<Path>(chains.size());
+		for (int i = 0; i < chains.size(); i++)
+			dirs.add(directory(chains.get(i), analyzers.get(i), layout));
+		// locked in a fixed order, so concurrent calls cannot deadlock
+		List<Path> lockOrder = new ArrayList<Path>(new TreeSet<Path>(dirs));
+		List<ReentrantLock> held = new ArrayList<ReentrantLock>(lockOrder.size());
+		try {
+			for (Path dir : lockOrder) {
+				ReentrantLock lock = locks.computeIfAbsent(dir, k -> new ReentrantLock());
+				lock.lock();
+				held.add(lock);
+			}
+			List<Integer> stale = new ArrayList<Integer>();
+			List<Path> staleDirs = new ArrayList<Path>();
+			List<String> fingerprints = new ArrayList<String>();
+			for (int i = 0; i < chains.size(); i++) {
+				String fingerprint = fingerprint(analyzers.get(i), layout, Paths.get(corpus));
+				if (!staleDirs.contains(dirs.get(i)) && !isUpToDate(type, dirs.get(i), fingerprint)) {
+					clear(type, chains.get(i) + "-collection-", dirs.get(i));
+					stale.add(i);
+					staleDirs.add(dirs.get(i));
+					fingerprints.add(fingerprint);
+				}
+			}
+			if (!stale.isEmpty())
+				builder.build(stale, staleDirs, fingerprints);
+		} finally {
+			for (ReentrantLock lock : held)
+				lock.unlock();
+		}
+		return dirs;
+	}
+
+	// the directory of the index of a chain, named after its schema fingerprint
+	private Path directory(String chain, Analyzer analyzer, String layout) {
+		return root.resolve(chain + "-collection-" + schemaFingerprint(analyzer, layout).substring(0, 16));
+	}
+
+	// removes the index of the directory and older ones of the same chain
+	private void clear(DirectoryType type, String prefix, Path dir) throws IOException {
+		if (type.isPersistent()) {
+			removeStale(prefix, dir);
+			IOUtils.rm(dir);
+			Files.createDirectories(dir);
+		}
+	}
+
+	// true if the directory holds a committed index built for the fingerprint
+	public static boolean isUpToDate(Path dir, String fingerprint) throws IOException {
+		return isUpToDate(DirectoryType.FS, dir, fingerprint);
+	}
+
+	public static boolean isUpToDate(DirectoryType type, Path dir, String fingerprint) throws IOException {
+		if (type.isPersistent() && !Files.isDirectory(dir))
+			return false;
+		try (Directory directory = type.open(dir)) {
+			if (!DirectoryReader.indexExists(directory))
+				return false;
+			return fingerprint.equals(SegmentInfos.readLatestCommit(directory).getUserData().get(FINGERPRINT_KEY));
+		}
+	}
+
+	private static boolean exists(DirectoryType type, Path dir) throws IOException {
+		if (type.isPersistent() && !Files.isDirectory(dir))
+			return false;
+		try (Directory directory = type.open(dir)) {
+			return DirectoryReader.indexExists(directory);
+		}
+	}
+
+	// records the fingerprint in the next commit of the writer
+	public static void setFingerprint(IndexWriter writer, String fingerprint) {
+		writer.setLiveCommitData(Collections.singletonMap(FINGERPRINT_KEY, fingerprint).entrySet());
+	}
+
+	// hex SHA-1 over the analysis chain, index layout and corpus file
+	public static String fingerprint(Analyzer analyzer, String layout, Path corpus) throws IOException {
+		MessageDigest digest = sha1();
+		update(digest, "lucene=" + Version.LATEST);
+		update(digest, "layout=" + layout);
+		update(digest, "analyzer=" + analyzerFingerprint(analyzer));
+		update(digest, "corpus=" + corpusHash(corpus));
+		return hex(digest.digest());
+	}
+
+	// hex SHA-1 over everything but the corpus: indexes with equal schema
+	// fingerprints only differ in the documents they hold
+	public static String schemaFingerprint(Analyzer analyzer, String layout) {
+		MessageDigest digest = sha1();
+		update(digest, "lucene=" + Version.LATEST);
+		update(digest, "layout=" + layout);
+		update(digest, "analyzer=" + analyzerFingerprint(analyzer));
+		return hex(digest.digest());
+	}
+
+	// identifies the analysis chain: analyzer class and its sorted stopwords
+	public static String analyzerFingerprint(Analyzer analyzer) {
+		StringBuilder sb = new StringBuilder(analyzer.getClass().getName());
+		if (analyzer instanceof StopwordAnalyzerBase) {
+			List<String> stopwords = new ArrayList<String>();
+			for (Object word : ((StopwordAnalyzerBase) analyzer).getStopwordSet())
+				stopwords.add(word instanceof char[] ? new String((char[]) word) : word.toString());
+			Collections.sort(stopwords);
+			sb.append(" stopwords=").append(stopwords);
+		}
+		return sb.toString();
+	}
+
+	// size and content hash of the corpus file
+	private static String corpusHash(Path corpus) throws IOException {
+		return Files.size(corpus) + ":" + contentHash(corpus);
+	}
+
+	// SHA-1 of the file's bytes in hex, read again only when its size or modification time changed
+	static String contentHash(Path corpus) throws IOException {
+		Path file = corpus.toAbsolutePath().normalize();
+		String key = file + ":" + Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+		String hash = corpusHashes.get(key);
+		if (hash == null) {
+			MessageDigest digest = sha1();
+			byte[] buffer = new byte[64 * 1024];
+			try (InputStream in = Files.newInputStream(file)) {
+				int read;
+				while ((read = in.read(buffer)) != -1)
+					digest.update(buffer, 0, read);
+			}
+			hash = hex(digest.digest());
+			corpusHashes.put(key, hash);
+		}
+		return hash;
+	}
+
+	// deletes older indexes built for the same chain
+	private void removeStale(String prefix, Path current) throws IOException {
+		if (!Files.isDirectory(root))
+			return;
+		try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, prefix + "*")) {
+			for (Path dir : dirs) {
+				if (!dir.equals(current) && Files.isDirectory(dir))
+					IOUtils.rm(dir);
+			}
+		}
+	}
+
+	private static MessageDigest sha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Lucene document for a DocumentInCollection with reusable Field instances
+ * One instance is meant to be used by a single indexing thread, the fields
+ * are overwritten for every document instead of being allocated again.
+ * The LEAN profile stores nothing and indexes text without positions,
+ * only term queries are ranked, so positions would never be read.
+ */
+package ir_course;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.util.BytesRef;
+
+public class IndexedDocument {
+
+	// not stored, term frequencies and norms but no positions
+	private static final FieldType LEAN_TEXT = new FieldType();
+	static {
+		LEAN_TEXT.setTokenized(true);
+		LEAN_TEXT.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+		LEAN_TEXT.freeze();
+	}
+
+	private final Document document = new Document();
+	private final Field key = new StringField("id", "", Field.Store.NO);
+	private final Field keyValues = new BinaryDocValuesField("id", new BytesRef());
+	private final Field contentHash = new NumericDocValuesField("content_hash", 0);
+	private final Field title;
+	private final Field abstractText;
+	private final Field searchTaskNumber = new StoredField("search_task_number", 0);
+	private final Field searchTaskNumberValues = new NumericDocValuesField("search_task_number", 0);
+	private final IntPoint searchTaskNumberPoint = new IntPoint("search_task_number", 0);
+	private final Field query;
+	private final Field relevant = new StoredField("relevant", 0);
+	private final Field relevantValues = new NumericDocValuesField("relevant", 0);
+
+	public IndexedDocument() {
+		this(IndexingOptions.Profile.FULL);
+	}
+
+	public IndexedDocument(IndexingOptions.Profile profile) {
+		boolean full = profile == IndexingOptions.Profile.FULL;
+		FieldType text = full ? TextField.TYPE_STORED : LEAN_TEXT;
+		title = new Field("title", "", text);
+		abstractText = new Field("abstract_text", "", text);
+		query = new Field("query", "", text);
+		document.add(key);
+		document.add(keyValues);
+		document.add(contentHash);
+		document.add(title);
+		document.add(abstractText);
+		if (full)
+			document.add(searchTaskNumber);
+		document.add(searchTaskNumberValues);
+		document.add(searchTaskNumberPoint);
+		document.add(query);
+		if (full)
+			document.add(relevant);
+		document.add(relevantValues);
+	}
+
+	// fills the reused fields with the given document
+	public Document set(DocumentInCollection doc) {
+		key.setStringValue(doc.getKey());
+		keyValues.setBytesValue(new BytesRef(doc.getKey()));
+		contentHash.setLongValue(doc.getContentHash());
+		title.setStringValue(doc.getTitle());
+		abstractText.setStringValue(doc.getAbstractText());
+		searchTaskNumber.setIntValue(doc.getSearchTaskNumber());
+		searchTaskNumberValues.setLongValue(doc.getSearchTaskNumber());
+		searchTaskNumberPoint.setIntValue(doc.getSearchTaskNumber());
+		query.setStringValue(doc.getQuery());
+		relevant.setIntValue(doc.isRelevant() ? 1 : 0);
+		relevantValues.setLongValue(doc.isRelevant() ? 1 : 0);
+		return document;
+	}
+
+	// as above, but the text fields are indexed from the given, already analyzed token streams
+	public Document set(DocumentInCollection doc, TokenStream titleTokens, TokenStream abstractTokens, TokenStream queryTokens) {
+		set(doc);
+		title.setTokenStream(titleTokens);
+		abstractText.setTokenStream(abstractTokens);
+		query.setTokenStream(queryTokens);
+		return document;
+	}
+
+	// the batch as Lucene documents, each one is filled only when the writer asks for it
+	public Iterable<Document> documents(List<DocumentInCollection> batch) {
+		return () -> new Iterator<Document>() {
+			private int i = 0;
+
+			public boolean hasNext() {
+				return i < batch.size();
+			}
+
+			public Document next() {
+				return set(batch.get(i++));
+			}
+		};
+	}
+}
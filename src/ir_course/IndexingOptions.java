@@ -0,0 +1,111 @@
+/*
+ * Settings for building an index: indexing threads, batch size,
+ * IndexWriter RAM buffer, merge policy and the final force-merge,
+ * what the documents keep (profile) and how stored fields are compressed
+ */
+package ir_course;
+
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+import org.apache.lucene.codecs.lucene62.Lucene62Codec;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
+
+public class IndexingOptions {
+
+	// what an index keeps of every document
+	public enum Profile {
+		// stored text and flags, term positions
+		FULL,
+		// postings with frequencies, norms and doc values only; titles for display
+		// come from a DocumentStore
+		LEAN
+	}
+
+	private int threads = 1;
+	private int batchSize = 100;
+	private double ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+	private MergePolicy mergePolicy = null;
+	private int maxSegments = 0;
+	private Profile profile = Profile.FULL;
+	private Lucene50StoredFieldsFormat.Mode storedFieldsMode = Lucene50StoredFieldsFormat.Mode.BEST_SPEED;
+
+	// applies the writer settings to a fresh IndexWriterConfig
+	public void apply(IndexWriterConfig config) {
+		config.setRAMBufferSizeMB(ramBufferSizeMB);
+		if (mergePolicy != null)
+			config.setMergePolicy(mergePolicy);
+		config.setCodec(new Lucene62Codec(storedFieldsMode));
+	}
+
+	// suffix of the catalog index layout, so indexes written with other settings are rebuilt
+	public String layout() {
+		return (profile == Profile.LEAN ? "-lean" : "") + (storedFieldsMode == Lucene50StoredFieldsFormat.Mode.BEST_COMPRESSION ? "-compressed" : "");
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	// number of threads converting and adding documents to the shared IndexWriter
+	public void setThreads(int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		this.threads = threads;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	// number of documents passed to a single IndexWriter.addDocuments call
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("batch size must be positive: " + batchSize);
+		this.batchSize = batchSize;
+	}
+
+	public double getRamBufferSizeMB() {
+		return ramBufferSizeMB;
+	}
+
+	public void setRamBufferSizeMB(double ramBufferSizeMB) {
+		this.ramBufferSizeMB = ramBufferSizeMB;
+	}
+
+	public MergePolicy getMergePolicy() {
+		return mergePolicy;
+	}
+
+	// null keeps the IndexWriterConfig default
+	public void setMergePolicy(MergePolicy mergePolicy) {
+		this.mergePolicy = mergePolicy;
+	}
+
+	public int getMaxSegments() {
+		return maxSegments;
+	}
+
+	// force-merges down to this many segments after indexing, 0 skips the force-merge
+	public void setMaxSegments(int maxSegments) {
+		if (maxSegments < 0)
+			throw new IllegalArgumentException("max segments must not be negative: " + maxSegments);
+		this.maxSegments = maxSegments;
+	}
+
+	public Profile getProfile() {
+		return profile;
+	}
+
+	public void setProfile(Profile profile) {
+		this.profile = profile;
+	}
+
+	public Lucene50StoredFieldsFormat.Mode getStoredFieldsMode() {
+		return storedFieldsMode;
+	}
+
+	// BEST_SPEED (the Lucene default) or BEST_COMPRESSION, a deflate-compressed stored fields format
+	public void setStoredFieldsMode(Lucene50StoredFieldsFormat.Mode storedFieldsMode) {
+		this.storedFieldsMode = storedFieldsMode;
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Just enough JSON for the query server: parses a document into maps,
+ * lists, strings, doubles, booleans and nulls, and quotes strings for
+ * output. Malformed input, and objects and arrays nested deeper than
+ * MAX_DEPTH, throw an IllegalArgumentException naming the offset where
+ * parsing stopped.
+ */
+package ir_course;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Json {
+
+	// deepest nesting of objects and arrays parsed, bounds the recursion
+	public static final int MAX_DEPTH = 64;
+
+	private final String text;
+	private int pos = 0;
+	private int depth = 0;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	// the value of the document, objects are Map<String, Object> and arrays List<Object>
+	public static Object parse(String text) {
+		Json json = new Json(text);
+		Object value = json.value();
+		json.skipWhitespace();
+		if (json.pos != text.length())
+			throw json.error("trailing characters");
+		return value;
+	}
+
+	// the string as a JSON string literal, quotes included
+	public static String quote(String s) {
+		StringBuilder sb = new StringBuilder(s.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private Object value() {
+		skipWhitespace();
+		if (pos == text.length())
+			throw error("unexpected end");
+		char c = text.charAt(pos);
+		switch (c) {
+		case '{':
+			return object();
+		case '[':
+			return array();
+		case '"':
+			return string();
+		case 't':
+			return literal("true", Boolean.TRUE);
+		case 'f':
+			return literal("false", Boolean.FALSE);
+		case 'n':
+			return literal("null", null);
+		default:
+			if (c == '-' || (c >= '0' && c <= '9'))
+				return number();
+			throw error("unexpected character '" + c + "'");
+		}
+	}
+
+	private Map<String, Object> object() {
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		enter();
+		skipWhitespace();
+		if (peek('}'))
+			return leave(object);
+		while (true) {
+			skipWhitespace();
+			if (pos == text.length() || text.charAt(pos) != '"')
+				throw error("expected a member name");
+			String name = string();
+			skipWhitespace();
+			expect(':');
+			object.put(name, value());
+			skipWhitespace();
+			if (peek('}'))
+				return leave(object);
+			expect(',');
+		}
+	}
+
+	private List<Object> array() {
+		List<Object> array = new ArrayList<Object>();
+		enter();
+		skipWhitespace();
+		if (peek(']'))
+			return leave(array);
+		while (true) {
+			array.add(value());
+			skipWhitespace();
+			if (peek(']'))
+				return leave(array);
+			expect(',');
+		}
+	}
+
+	private String string() {
+		pos++;
+		StringBuilder sb = new StringBuilder();
+		while (pos < text.length()) {
+			char c = text.charAt(pos++);
+			if (c == '"')
+				return sb.toString();
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			if (pos == text.length())
+				break;
+			char escaped = text.charAt(pos++);
+			switch (escaped) {
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'u':
+				if (pos + 4 > text.length())
+					throw error("truncated unicode escape");
+				try {
+					sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+				} catch (NumberFormatException e) {
+					throw error("bad unicode escape");
+				}
+				pos += 4;
+				break;
+			default:
+				sb.append(escaped);
+			}
+		}
+		throw error("unterminated string");
+	}
+
+	private Double number() {
+		int start = pos;
+		while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0)
+			pos++;
+		try {
+			return Double.valueOf(text.substring(start, pos));
+		} catch (NumberFormatException e) {
+			pos = start;
+			throw error("bad number");
+		}
+	}
+
+	private Object literal(String word, Object value) {
+		if (!text.startsWith(word, pos))
+			throw error("unexpected character '" + text.charAt(pos) + "'");
+		pos += word.length();
+		return value;
+	}
+
+	// consumes the opening bracket of an object or array
+	private void enter() {
+		if (depth == MAX_DEPTH)
+			throw error("nested deeper than " + MAX_DEPTH);
+		depth++;
+		pos++;
+	}
+
+	private <T> T leave(T value) {
+		depth--;
+		return value;
+	}
+
+	// consumes c if it is next
+	private boolean peek(char c) {
+		if (pos < text.length() && text.charAt(pos) == c) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(char c) {
+		if (!peek(c))
+			throw error("expected '" + c + "'");
+	}
+
+	private void skipWhitespace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+			pos++;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException("malformed JSON at offset " + pos + ": " + message);
+	}
+}
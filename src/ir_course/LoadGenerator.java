@@ -0,0 +1,258 @@
+/*
+ * Closed-loop load generator for the QueryServer
+ * At each concurrency level, that many clients send search requests back
+ * to back, each waiting for its answer before the next. Only requests
+ * that finish within the measured duration, after the warm-up, count; the
+ * latency of every one of them is kept, so the level is reported as QPS
+ * (completions per second of the duration) with exact p50 and p99
+ * latencies. Raising the level until QPS stops growing while p99 does
+ * shows how many concurrent queries a machine can serve.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class LoadGenerator {
+
+	// latencies and throughput of one concurrency level
+	public static class Result {
+		private final int concurrency;
+		private final long[] latencies;
+		private final long errors;
+		private final long nanos;
+
+		Result(int concurrency, long[] latencies, long errors, long nanos) {
+			this.concurrency = concurrency;
+			this.latencies = latencies;
+			this.errors = errors;
+			this.nanos = nanos;
+			Arrays.sort(this.latencies);
+		}
+
+		public int getConcurrency() {
+			return concurrency;
+		}
+
+		// measured requests that were answered with 200
+		public int getRequests() {
+			return latencies.length;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		public double qps() {
+			return latencies.length / (nanos / 1e9);
+		}
+
+		// latency at the quantile, 0 < q <= 1, by the nearest-rank method
+		public double percentileMillis(double q) {
+			if (latencies.length == 0)
+				return 0;
+			int rank = (int) Math.ceil(q * latencies.length);
+			return latencies[Math.max(rank, 1) - 1] / 1e6;
+		}
+	}
+
+	private final URL url;
+	// request bodies, sent round robin from a different start by every client
+	private final List<String> requests = new ArrayList<String>();
+	private long warmupMillis = 1000;
+	private long durationMillis = 5000;
+
+	// every query is sent as {"query": text}
+	public LoadGenerator(URL url, List<String> queries) {
+		if (queries.isEmpty())
+			throw new IllegalArgumentException("no queries to send");
+		this.url = url;
+		for (String query : queries)
+			requests.add("{\"query\": " + Json.quote(query) + "}");
+	}
+
+	public void setDuration(long warmupMillis, long durationMillis) {
+		if (warmupMillis < 0 || durationMillis <= 0)
+			throw new IllegalArgumentException("bad warm-up or duration: " + warmupMillis + ", " + durationMillis);
+		this.warmupMillis = warmupMillis;
+		this.durationMillis = durationMillis;
+	}
+
+	// runs the given number of clients for the warm-up and the measured duration
+	public Result run(int concurrency) throws IOException {
+		ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+		try {
+			long start = System.nanoTime();
+			long measureFrom = start + warmupMillis * 1000000L;
+			long end = measureFrom + durationMillis * 1000000L;
+			List<Future<long[]>> futures = new ArrayList<Future<long[]>>(concurrency);
+			for (int c = 0; c < concurrency; c++) {
+				int first = (int) ((long) c * requests.size() / concurrency);
+				futures.add(clients.submit(() -> client(first, measureFrom, end)));
+			}
+			// the latencies of a client, its error count last
+			List<long[]> results = new ArrayList<long[]>(concurrency);
+			int measured = 0;
+			long errors = 0;
+			for (Future<long[]> future : futures) {
+				long[] result = get(future);
+				results.add(result);
+				measured += result.length - 1;
+				errors += result[result.length - 1];
+			}
+			long[] latencies = new long[measured];
+			int offset = 0;
+			for (long[] result : results) {
+				System.arraycopy(result, 0, latencies, offset, result.length - 1);
+				offset += result.length - 1;
+			}
+			return new Result(concurrency, latencies, errors, end - measureFrom);
+		} finally {
+			clients.shutdownNow();
+		}
+	}
+
+	// sends requests until end, the latencies of those that finished between measureFrom
+	// and end followed by the number of failed ones; one still running at end is not counted
+	private long[] client(int first, long measureFrom, long end) {
+		long[] latencies = new long[1024];
+		int size = 0;
+		long errors = 0;
+		for (int i = first; ; i++) {
+			long start = System.nanoTime();
+			if (start >= end)
+				break;
+			boolean ok = send(requests.get(i % requests.size()));
+			long finished = System.nanoTime();
+			if (finished > end)
+				break;
+			if (finished < measureFrom)
+				continue;
+			if (!ok) {
+				errors++;
+				continue;
+			}
+			if (size == latencies.length)
+				latencies = Arrays.copyOf(latencies, size * 2);
+			latencies[size++] = finished - start;
+		}
+		long[] result = Arrays.copyOf(latencies, size + 1);
+		result[size] = errors;
+		return result;
+	}
+
+	// true if the server answered 200, the body is read so the connection is kept alive
+	private boolean send(String body) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(bytes);
+			}
+			int status = connection.getResponseCode();
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				if (in != null)
+					QueryServer.readAll(in, Integer.MAX_VALUE);
+			}
+			return status == 200;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public static void print(List<Result> results, PrintStream out) {
+		out.println(String.format(Locale.ROOT, "%11s %9s %7s %10s %9s %9s", "concurrency", "requests", "errors", "qps", "p50 ms", "p99 ms"));
+		for (Result result : results) {
+			out.println(String.format(Locale.ROOT, "%11d %9d %7d %10.1f %9.3f %9.3f", result.getConcurrency(), result.getRequests(),
+					result.getErrors(), result.qps(), result.percentileMillis(0.5), result.percentileMillis(0.99)));
+		}
+	}
+
+	// up to max distinct document titles of the corpus in a fixed random order, a varied
+	// load that mostly misses the result cache
+	public static List<String> titles(String corpus, int max) throws IOException {
+		Set<String> titles = new LinkedHashSet<String>();
+		try (Stream<DocumentInCollection> docs = DocumentCollectionParser.load(corpus, Metrics.get("load generator"))) {
+			docs.forEach(doc -> {
+				if (doc.getTitle() != null && !doc.getTitle().trim().isEmpty())
+					titles.add(doc.getTitle());
+			});
+		}
+		List<String> queries = new ArrayList<String>(titles);
+		Collections.shuffle(queries, new Random(42));
+		return queries.subList(0, Math.min(max, queries.size()));
+	}
+
+	private static long[] get(Future<long[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	// LoadGenerator url [-corpus file] [-levels 1,2,4,...] [-seconds n] [-warmup n]
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("ERROR: the URL of a query server's /search has to be passed as a command line argument.");
+			return;
+		}
+		List<String> queries = Arrays.asList(
+			"social recommender system",
+			"a recommender system with explanations",
+			"novelty and diversity in recommender systems");
+		int[] levels = {1, 2, 4, 8, 16, 32};
+		long seconds = 5;
+		long warmup = 1;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-corpus") && i + 1 < args.length)
+				queries = titles(args[++i], 1000);
+			else if (args[i].equals("-levels") && i + 1 < args.length && args[i + 1].matches("[1-9][0-9]*(,[1-9][0-9]*)*"))
+				levels = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+			else if (args[i].equals("-seconds") && i + 1 < args.length && args[i + 1].matches("[1-9][0-9]*"))
+				seconds = Long.parseLong(args[++i]);
+			else if (args[i].equals("-warmup") && i + 1 < args.length && args[i + 1].matches("[0-9]+"))
+				warmup = Long.parseLong(args[++i]);
+			else {
+				System.out.println("ERROR: unknown option " + args[i] + ", expected -corpus file, -levels 1,2,4,..., -seconds n or -warmup n");
+				return;
+			}
+		}
+		// idle keep-alive connections kept per server, 5 by default, before the first request
+		if (System.getProperty("http.maxConnections") == null)
+			System.setProperty("http.maxConnections", Integer.toString(Arrays.stream(levels).max().getAsInt()));
+		LoadGenerator generator = new LoadGenerator(new URL(args[0]), queries);
+		generator.setDuration(warmup * 1000, seconds * 1000);
+		List<Result> results = new ArrayList<Result>();
+		for (int concurrency : levels) {
+			results.add(generator.run(concurrency));
+			System.out.println("concurrency " + concurrency + " done");
+		}
+		System.out.println();
+		print(results, System.out);
+	}
+}
@@ -10,71 +10,178 @@
  */
 package ir_course;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.apache.lucene.analysis.*;
 import org.apache.lucene.analysis.en.*;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
 import org.apache.lucene.document.*;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BooleanQuery.Builder;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.PointRangeQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.similarities.*;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.search.similarities.TFIDFSimilarity;
 
 
-public class LuceneSearchApp {
-	FileHandler handler;
+public class LuceneSearchApp implements Closeable {
+	// default.log, opened once per process however many engines are created
+	static FileHandler handler;
 	String analyzer = "bm25";
 	boolean stopwords = true;
 	boolean stemmer = true;
 	Integer TaskNumber = null;
 	IndexWriterConfig iwc = null;
 	Analyzer standardAnalyzer = new StandardAnalyzer();
+	// analysis chain of standardAnalyzer, its name also names the catalog directories
+	AnalysisRegistry.Chain chain = AnalysisRegistry.chain("standard-stop");
+	Path indexPath = Paths.get("index/");
+	// progress and results are printed here, experiments running in parallel each get their own buffer
+	PrintStream out = System.out;
+	// number of ranked hits evaluated per query, TREC-style
+	int rankDepth = 1000;
+	// stop walking the ranked list once all relevant documents were retrieved
+	boolean stopAtFullRecall = false;
+	// how index files are stored and read
+	DirectoryType directoryType = DirectoryType.FS;
+	// update a catalog index built for an older corpus in place instead of rebuilding it
+	boolean incremental = false;
+	// writer of upsert/delete, searches see its changes through near-real-time readers
+	IndexWriter liveWriter = null;
+	// threads, batching and writer settings used when building an index
+	IndexingOptions indexing = new IndexingOptions();
+	// titles of the hits of lean indexes, which store none; optional
+	DocumentStore documentStore = null;
+	// threads running the queries of searchBatch
+	int batchThreads = Runtime.getRuntime().availableProcessors();
+	ExecutorService batchExecutor = null;
+	// segment-parallel search for queries with at least segmentParallelClauses clauses, off while searchExecutor is null
+	ExecutorService searchExecutor = null;
+	int segmentParallelClauses = Integer.MAX_VALUE;
+	// number of shards openIndex() splits the index into by shardRouter, 1 for a single index
+	int shards = 1;
+	ShardRouter shardRouter = ShardRouter.HASH;
+	// fans the queries out to the shards, null for a single index
+	ExecutorService shardExecutor = null;
+	// the open shards and a searcher over all of them, instead of searcherManager
+	ShardedIndex shardedIndex = null;
+	IndexSearcher shardedSearcher = null;
+	// shared, reference counted searcher over indexPath
+	SearcherManager searcherManager = null;
+	Directory searchDirectory = null;
+	Path searcherPath = null;
+	DirectoryType searcherDirectoryType = null;
+	Similarity searcherSimilarity = null;
+	// ranked lists are also written here in TREC run format, tagged with runTag
+	RunWriter runWriter = null;
+	String runTag = null;
+	// searches look up and store their ranked lists here, off while null
+	ResultCache resultCache = RESULTS;
+	// every ranked list is also evaluated into this table under evaluationRun, off while null
+	EvaluationTable evaluationTable = null;
+	String evaluationRun = null;
+	// the only stored field read back from full indexes
+	static final Set<String> TITLE_FIELD = Collections.singleton("title");
+	// bump whenever the fields written by write() change, so catalog indexes get rebuilt
+	static final String INDEX_LAYOUT = "5";
+	static final IndexCatalog CATALOG = new IndexCatalog(Paths.get("index/"));
+	// non-scoring task filters, cached per segment for every searcher of the process
+	static final LRUQueryCache TASK_FILTERS = new LRUQueryCache(256, 16 * 1024 * 1024, leaf -> true);
+	static final QueryCachingPolicy TASK_FILTER_POLICY = new QueryCachingPolicy() {
+		public void onUse(Query query) {
+		}
+		
+		public boolean shouldCache(Query query) {
+			return query instanceof PointRangeQuery;
+		}
+	};
+	// analyzed query terms shared by all engines, topics repeat across ranking methods
+	static final AnalyzedTermCache QUERY_TERMS = new AnalyzedTermCache(10000);
+	// ranked lists of repeated queries, shared by all engines; entries are per reader
+	static final ResultCache RESULTS = new ResultCache(64L * 1024 * 1024);
+	// identifies standardAnalyzer in QUERY_TERMS
+	String analyzerKey = null;
+	// phase timings and counters of the current ranking configuration
+	Metrics metrics = Metrics.get("default");
 	private final static Logger LOGGER = Logger.getLogger(LuceneSearchApp.class.getName());
 	
 	public LuceneSearchApp() {
-		LOGGER.setUseParentHandlers(false);
+		installLogHandler();
+	}
+	
+	// the handler is closed by the LogManager when the JVM exits
+	private static synchronized void installLogHandler() {
+		if (handler != null)
+			return;
 		 try {
 			handler = new FileHandler("default.log",true);
 			Formatter formatterTxt = new SimpleFormatter();
 	        handler.setFormatter(formatterTxt);
+			LOGGER.addHandler(handler);
+			LOGGER.setUseParentHandlers(false);
 		} catch (SecurityException | IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			// keep logging to the console
+			LOGGER.log(Level.WARNING, "cannot open default.log", e);
 		}
-		LOGGER.addHandler(handler);
 	}
 	
 	public void setRankingMethod(String type, Integer tasknumber){
@@ -117,266 +224,774 @@ public class LuceneSearchApp {
 		}
 	}
 	
-	public void index(List<DocumentInCollection> docs) throws IOException {		
-		// implement the Lucene indexing here
-		
-		if (analyzer.equals("vsm") && stopwords && stemmer) 
-        {
-            //VSM cosine similarity with TFIDF + stopwords + stemmer
-            CharArraySet stopWords = EnglishAnalyzer.getDefaultStopSet();
-            standardAnalyzer = new EnglishAnalyzer(stopWords);
-            iwc = new IndexWriterConfig(standardAnalyzer);
-            iwc.setSimilarity(new ClassicSimilarity());
-        } 
-        else if (analyzer.equals("vsm") && !stopwords && stemmer) 
-        {
-            //VSM cosine similarity with TFIDF - stopwords + stemmer
-        	standardAnalyzer = new EnglishAnalyzer(CharArraySet.EMPTY_SET);
-        	iwc = new IndexWriterConfig(new EnglishAnalyzer(CharArraySet.EMPTY_SET));
-        	iwc.setSimilarity(new ClassicSimilarity());
-        } 
-        else if (analyzer.equals("vsm") && stopwords && !stemmer) 
-        {
-            //VSM cosine similarity with TFIDF + stopwords - stemmer
-            CharArraySet stopWords = StandardAnalyzer.STOP_WORDS_SET;
-            standardAnalyzer = new StandardAnalyzer(stopWords);
-            iwc = new IndexWriterConfig(standardAnalyzer);
-            iwc.setSimilarity(new ClassicSimilarity());
-        } 
-        else if (analyzer.equals("bm25") && stopwords && stemmer) 
-        {
-            //Analyzer + stopwords + stemmer
-            CharArraySet stopWords = EnglishAnalyzer.getDefaultStopSet();
-            standardAnalyzer = new EnglishAnalyzer(stopWords);
-            iwc = new IndexWriterConfig(standardAnalyzer);
-            //BM25 ranking method
-            iwc.setSimilarity(new BM25Similarity());
-        } 
-        else if (analyzer.equals("bm25") && !stopwords && stemmer) 
-        {
-            //Analyzer - stopwords + stemmer
-        	standardAnalyzer = new EnglishAnalyzer(CharArraySet.EMPTY_SET);
-        	iwc = new IndexWriterConfig(standardAnalyzer);
-            //BM25 ranking method
-        	iwc.setSimilarity(new BM25Similarity());
-        } 
-        else if (analyzer.equals("bm25") && stopwords && !stemmer) 
-        {
-            //Analyzer + stopwords - stemmer
-            CharArraySet stopWords = StandardAnalyzer.STOP_WORDS_SET;
-            standardAnalyzer = new StandardAnalyzer(stopWords);
-            iwc = new IndexWriterConfig(standardAnalyzer);
-            //BM25 ranking method
-            iwc.setSimilarity(new BM25Similarity());
-        }
-        else if (analyzer.equals("LMDirichlet") && stopwords && stemmer) 
-        {
-            //Analyzer + stopwords + stemmer
-            CharArraySet stopWords = EnglishAnalyzer.getDefaultStopSet();
-            standardAnalyzer = new EnglishAnalyzer(stopWords);
-            iwc = new IndexWriterConfig(standardAnalyzer);
-            //BM25 ranking method
-            iwc.setSimilarity(new LMDirichletSimilarity());
-        } 
-        else if (analyzer.equals("LMDirichlet") && !stopwords && stemmer) 
-        {
-            //Analyzer - stopwords + stemmer
-        	standardAnalyzer = new EnglishAnalyzer(CharArraySet.EMPTY_SET);
-        	iwc = new IndexWriterConfig(standardAnalyzer);
-            //BM25 ranking method
-        	iwc.setSimilarity(new LMDirichletSimilarity());
-        } 
-        else if (analyzer.equals("LMDirichlet") && stopwords && !stemmer) 
-        {
-            //Analyzer + stopwords - stemmer
-            CharArraySet stopWords = StandardAnalyzer.STOP_WORDS_SET;
-            standardAnalyzer = new StandardAnalyzer(stopWords);
-            iwc = new IndexWriterConfig(standardAnalyzer);
-            //BM25 ranking method
-            iwc.setSimilarity(new LMDirichletSimilarity());
-        }
-        else
-        {
-            //default settings
-        	standardAnalyzer = new StandardAnalyzer();
-            iwc = new IndexWriterConfig(standardAnalyzer);
-            iwc.setSimilarity(new ClassicSimilarity());
-        }
-		
-
-		Directory fsDirectory = FSDirectory.open(Paths.get("index/"));
-		iwc.setOpenMode(OpenMode.CREATE);
-		IndexWriter writer = new IndexWriter(fsDirectory, iwc);
-        System.out.println("Setting : "+analyzer+" "+(stopwords?"+":"-") +" stopwords "+(stemmer?"+":"-") +" stemmer");
-		
-		for(DocumentInCollection _rssfeeddoc : docs){
-			Document doc = new Document();
-			//System.out.println(_rssfeeddoc.getTitle()+" : "+_rssfeeddoc.getPubDate().getTime()+" - "+_rssfeeddoc.getDescription());
-			if(_rssfeeddoc.getSearchTaskNumber() == TaskNumber){
-				doc.add(new TextField("title", _rssfeeddoc.getTitle(), Field.Store.YES));
-				doc.add(new TextField("abstract_text", _rssfeeddoc.getAbstractText(), Field.Store.YES));
-				doc.add(new StoredField("search_task_number", _rssfeeddoc.getSearchTaskNumber()));
-				doc.add(new TextField("query", _rssfeeddoc.getQuery(), Field.Store.YES));
-				doc.add(new StoredField("relevant", ((_rssfeeddoc.isRelevant())? 1 : 0)));
-				//doc.add(new LongPoint("publication_date", _rssfeeddoc.getPubDate().getTime()));
-				writer.addDocument(doc);
+	// chooses the analyzer and similarity for the current ranking method
+	private void configure() {
+		chain = rankingChain();
+		standardAnalyzer = chain.analyzer();
+		iwc = new IndexWriterConfig(standardAnalyzer);
+		iwc.setSimilarity(AnalysisRegistry.similarity(analyzer));
+		analyzerKey = IndexCatalog.analyzerFingerprint(standardAnalyzer);
+		metrics = Metrics.get(configurationName());
+		out.println("Setting : "+analyzer+" "+(stopwords?"+":"-") +" stopwords "+(stemmer?"+":"-") +" stemmer");
+	}
+	
+	// what the metrics of the current ranking method are recorded under
+	private String configurationName() {
+		return analyzer+" "+(stopwords?"+":"-") +"stopwords "+(stemmer?"+":"-") +"stemmer";
+	}
+	
+	// unknown rankings fall back to tf-idf on the standard analyzer with stopwords
+	private AnalysisRegistry.Chain rankingChain() {
+		return AnalysisRegistry.hasSimilarity(analyzer) ? AnalysisRegistry.chain(stopwords, stemmer) : AnalysisRegistry.chain("standard-stop");
+	}
+	
+	public void setRankDepth(int rankDepth) {
+		if (rankDepth <= 0)
+			throw new IllegalArgumentException("rank depth must be positive: " + rankDepth);
+		this.rankDepth = rankDepth;
+	}
+	
+	public void setStopAtFullRecall(boolean stopAtFullRecall) {
+		this.stopAtFullRecall = stopAtFullRecall;
+	}
+	
+	// writes the ranked list of every query to runWriter under the given tag, null turns it off;
+	// the writer is shared and closed by the caller
+	public void setRunWriter(RunWriter runWriter, String runTag) {
+		this.runWriter = runWriter;
+		this.runTag = runTag;
+	}
+	
+	// evaluates every ranked list into the table as the given run, the query ids of
+	// search() must be queries of the table; null turns it off
+	public void setEvaluationTable(EvaluationTable evaluationTable, String evaluationRun) {
+		this.evaluationTable = evaluationTable;
+		this.evaluationRun = evaluationRun;
+	}
+	
+	// null turns result caching off
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+	
+	// the profile and codec of the options are part of the catalog layout, so they select
+	// which index openIndex() opens
+	public void setIndexingOptions(IndexingOptions indexing) {
+		this.indexing = indexing;
+	}
+	
+	// titles of hits in lean indexes are looked up here, without one their keys are logged
+	public void setDocumentStore(DocumentStore documentStore) {
+		this.documentStore = documentStore;
+	}
+	
+	public synchronized void setBatchThreads(int batchThreads) {
+		if (batchThreads <= 0)
+			throw new IllegalArgumentException("batch threads must be positive: " + batchThreads);
+		this.batchThreads = batchThreads;
+		if (batchExecutor != null) {
+			batchExecutor.shutdown();
+			batchExecutor = null;
+		}
+	}
+	
+	// searches queries with at least minClauses clauses segment by segment on the given
+	// number of threads, 0 threads turns segment-parallel search off
+	public synchronized void setSegmentParallel(int threads, int minClauses) throws IOException {
+		if (searchExecutor != null)
+			searchExecutor.shutdown();
+		searchExecutor = threads > 0 ? Executors.newFixedThreadPool(threads) : null;
+		segmentParallelClauses = minClauses;
+		// searchers are created with the executor, so the next search opens a new one
+		closeSearcher();
+	}
+	
+	// openIndex() builds and opens the index as shards, each document in the shard the router
+	// picks, and searches them in parallel; sharded indexes are read-only and always rebuilt
+	// instead of updated
+	public synchronized void setSharding(int shards, ShardRouter router) throws IOException {
+		if (shards <= 0)
+			throw new IllegalArgumentException("shards must be positive: " + shards);
+		if (shardExecutor != null)
+			shardExecutor.shutdown();
+		this.shards = shards;
+		this.shardRouter = router;
+		shardExecutor = shards > 1 ? Executors.newFixedThreadPool(shards) : null;
+		closeSearcher();
+	}
+	
+	private synchronized ExecutorService batchExecutor() {
+		if (batchExecutor == null)
+			batchExecutor = Executors.newFixedThreadPool(batchThreads);
+		return batchExecutor;
+	}
+	
+	public void setDirectoryType(DirectoryType directoryType) {
+		this.directoryType = directoryType;
+	}
+	
+	// note that deleted and replaced documents still count in the term statistics
+	// until their segments are merged, so scores can differ slightly from a rebuild
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+	
+	// indexes the documents into the default index directory
+	public void index(Iterable<DocumentInCollection> docs) throws IOException {
+		index(docs, Paths.get("index/"));
+	}
+	
+	// indexes the documents into the given index directory
+	public void index(Iterable<DocumentInCollection> docs, Path path) throws IOException {
+		closeLiveWriter();
+		configure();
+		indexPath = path;
+		write(indexPath, docs, null);
+		openSearcher();
+	}
+	
+	// opens the catalog index matching the current ranking method, task and corpus,
+	// the corpus is only parsed and indexed when no up-to-date index exists yet
+	public void openIndex(String corpus) throws IOException {
+		closeLiveWriter();
+		configure();
+		if (shards > 1) {
+			openShards(corpus);
+			return;
+		}
+		indexPath = CATALOG.open(chain.getName(), standardAnalyzer, INDEX_LAYOUT + indexing.layout(), corpus, directoryType, (dir, fingerprint) -> {
+			try (Stream<DocumentInCollection> docs = DocumentCollectionParser.load(corpus, metrics)) {
+				write(dir, docs::iterator, fingerprint);
+			}
+		}, !incremental ? null : (dir, fingerprint) -> {
+			try (Stream<DocumentInCollection> docs = DocumentCollectionParser.load(corpus, metrics)) {
+				sync(dir, docs::iterator, fingerprint);
+			}
+		});
+		openSearcher();
+	}
+	
+	// opens the catalog shards of the current chain, the missing or stale ones are built
+	// in one read of the corpus, all of them at the same time
+	private synchronized void openShards(String corpus) throws IOException {
+		List<String> names = new ArrayList<String>(shards);
+		for (int s = 0; s < shards; s++)
+			names.add(chain.getName() + "-shard" + s + "of" + shards);
+		String layout = INDEX_LAYOUT + indexing.layout() + "-" + shardRouter.getName();
+		List<Path> dirs = CATALOG.openAll(names, Collections.nCopies(shards, standardAnalyzer), layout, corpus, directoryType, (stale, staleDirs, fingerprints) -> {
+			List<Directory> directories = new ArrayList<Directory>();
+			List<IndexWriter> writers = new ArrayList<IndexWriter>(Collections.nCopies(shards, (IndexWriter) null));
+			try (Stream<DocumentInCollection> docs = DocumentCollectionParser.load(corpus, metrics)) {
+				for (int i = 0; i < stale.size(); i++) {
+					directories.add(directoryType.open(staleDirs.get(i)));
+					writers.set(stale.get(i), new IndexWriter(directories.get(i), writerConfig(OpenMode.CREATE)));
+				}
+				long start = metrics.start();
+				BulkIndexer.Stats stats = new BulkIndexer(writers, shardRouter, indexing).index(docs.iterator());
+				for (int i = 0; i < stale.size(); i++) {
+					IndexWriter writer = writers.get(stale.get(i));
+					if (indexing.getMaxSegments() > 0)
+						writer.forceMerge(indexing.getMaxSegments());
+					IndexCatalog.setFingerprint(writer, fingerprints.get(i));
+					writer.commit();
+				}
+				LOGGER.info(stats.toString() + " into " + staleDirs);
+				metrics.stop(Metrics.Phase.INDEX, start);
+				metrics.count(Metrics.Counter.DOCS_INDEXED, stats.getDocs());
+				if (Metrics.isEnabled()) {
+					for (Directory directory : directories)
+						metrics.count(Metrics.Counter.INDEX_BYTES, sizeOf(directory));
+				}
+			} finally {
+				IOUtils.close(writers);
+				IOUtils.close(directories);
+			}
+		});
+		closeSearcher();
+		shardedIndex = ShardedIndex.open(dirs, directoryType, shardExecutor);
+		shardedIndex.setQueryCache(TASK_FILTERS, TASK_FILTER_POLICY);
+		shardedSearcher = searcher(shardedIndex.getReader(), iwc.getSimilarity());
+		Qrels.get(shardedIndex.getReader());
+	}
+	
+	// builds the catalog indexes of the ranking methods that are missing or stale in one read
+	// of the corpus, every document is tokenized once for all of their analysis chains
+	public static void buildIndexes(String corpus, Collection<String> methods, DirectoryType directoryType, IndexingOptions indexing) throws IOException {
+		// the first method of every chain decides the similarity its index is written with,
+		// the length norms are the same for all of them
+		Map<String, AnalysisRegistry.Chain> chains = new LinkedHashMap<String, AnalysisRegistry.Chain>();
+		Map<String, Similarity> similarities = new HashMap<String, Similarity>();
+		// and its configuration is the one the index is recorded under, as if it had built it alone
+		Map<String, Metrics> chainMetrics = new HashMap<String, Metrics>();
+		for (String method : methods) {
+			LuceneSearchApp engine = new LuceneSearchApp();
+			engine.setRankingMethod(method, null);
+			AnalysisRegistry.Chain chain = engine.rankingChain();
+			if (chains.putIfAbsent(chain.getName(), chain) == null) {
+				similarities.put(chain.getName(), AnalysisRegistry.similarity(engine.analyzer));
+				chainMetrics.put(chain.getName(), Metrics.get(engine.configurationName()));
 			}
 		}
-		writer.close();
-		
-		
+		List<String> names = new ArrayList<String>(chains.keySet());
+		List<Analyzer> analyzers = new ArrayList<Analyzer>();
+		for (AnalysisRegistry.Chain chain : chains.values())
+			analyzers.add(chain.analyzer());
+		// parsing is shared by the chains, indexing is recorded for each of them
+		Metrics metrics = Metrics.get("shared analysis");
+		CATALOG.openAll(names, analyzers, INDEX_LAYOUT + indexing.layout(), corpus, directoryType, (stale, dirs, fingerprints) -> {
+			List<Directory> directories = new ArrayList<Directory>();
+			List<IndexWriter> writers = new ArrayList<IndexWriter>();
+			List<AnalysisRegistry.Chain> staleChains = new ArrayList<AnalysisRegistry.Chain>();
+			try (Stream<DocumentInCollection> docs = DocumentCollectionParser.load(corpus, metrics)) {
+				for (int i = 0; i < stale.size(); i++) {
+					String name = names.get(stale.get(i));
+					IndexWriterConfig config = new IndexWriterConfig(analyzers.get(stale.get(i)));
+					config.setSimilarity(similarities.get(name));
+					config.setOpenMode(OpenMode.CREATE);
+					indexing.apply(config);
+					directories.add(directoryType.open(dirs.get(i)));
+					writers.add(new IndexWriter(directories.get(i), config));
+					staleChains.add(chains.get(name));
+				}
+				long start = metrics.start();
+				BulkIndexer.Stats stats = new BulkIndexer(writers, staleChains, indexing).index(docs.iterator());
+				for (int i = 0; i < writers.size(); i++) {
+					if (indexing.getMaxSegments() > 0)
+						writers.get(i).forceMerge(indexing.getMaxSegments());
+					IndexCatalog.setFingerprint(writers.get(i), fingerprints.get(i));
+					writers.get(i).commit();
+				}
+				LOGGER.info(stats.toString() + " into " + dirs);
+				// every chain was indexed for the whole time
+				for (int i = 0; i < writers.size(); i++) {
+					chainMetrics.get(names.get(stale.get(i))).stop(Metrics.Phase.INDEX, start);
+					chainMetrics.get(names.get(stale.get(i))).count(Metrics.Counter.DOCS_INDEXED, stats.getDocs());
+				}
+				if (Metrics.isEnabled()) {
+					for (int i = 0; i < writers.size(); i++)
+						chainMetrics.get(names.get(stale.get(i))).count(Metrics.Counter.INDEX_BYTES, sizeOf(directories.get(i)));
+				}
+			} finally {
+				IOUtils.close(writers);
+				IOUtils.close(directories);
+			}
+		});
+	}
+	
+	// adds new documents and replaces changed ones by key in the open index,
+	// searches see them after the next refresh() and commit() makes them durable
+	public synchronized void upsert(Iterable<DocumentInCollection> docs) throws IOException {
+		IndexWriter writer = liveWriter();
+		IndexedDocument fields = new IndexedDocument(indexing.getProfile());
+		for (DocumentInCollection doc : docs)
+			writer.updateDocument(new Term("id", doc.getKey()), fields.set(doc));
+	}
+	
+	// deletes the documents with the given keys from the open index
+	public synchronized void delete(Collection<String> keys) throws IOException {
+		IndexWriter writer = liveWriter();
+		Term[] terms = new Term[keys.size()];
+		int i = 0;
+		for (String key : keys)
+			terms[i++] = new Term("id", key);
+		writer.deleteDocuments(terms);
+	}
+	
+	// makes upserts and deletes durable
+	public synchronized void commit() throws IOException {
+		if (liveWriter != null)
+			liveWriter.commit();
+	}
+	
+	// opens the writer on the current index and moves the searcher onto its near-real-time readers
+	private synchronized IndexWriter liveWriter() throws IOException {
+		if (liveWriter != null)
+			return liveWriter;
+		if (shardedIndex != null)
+			throw new IllegalStateException("sharded indexes are read-only, upsert and delete need a single index");
+		Similarity similarity = iwc.getSimilarity();
+		closeSearcher();
+		searchDirectory = directoryType.open(indexPath);
+		liveWriter = new IndexWriter(searchDirectory, writerConfig(OpenMode.CREATE_OR_APPEND));
+		// the index no longer matches the corpus it was built from, the catalog syncs it on the next open
+		IndexCatalog.setFingerprint(liveWriter, "");
+		searcherManager = new SearcherManager(liveWriter, searcherFactory(similarity));
+		searcherPath = indexPath;
+		searcherDirectoryType = directoryType;
+		searcherSimilarity = similarity;
+		return liveWriter;
+	}
+	
+	// opens the shared searcher on the current index, or refreshes it when only the index changed
+	private synchronized void openSearcher() throws IOException {
+		Similarity similarity = iwc.getSimilarity();
+		if (searcherManager != null && indexPath.equals(searcherPath) && directoryType == searcherDirectoryType
+				&& similarity.toString().equals(searcherSimilarity.toString())) {
+			searcherManager.maybeRefreshBlocking();
+			return;
+		}
+		closeSearcher();
+		searchDirectory = directoryType.open(indexPath);
+		searcherManager = new SearcherManager(searchDirectory, searcherFactory(similarity));
+		searcherPath = indexPath;
+		searcherDirectoryType = directoryType;
+		searcherSimilarity = similarity;
+	}
+	
+	private SearcherFactory searcherFactory(Similarity similarity) {
+		return new SearcherFactory() {
+			public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+				IndexSearcher searcher = searcher(reader, similarity);
+				// relevance judgments are loaded once per reader generation
+				Qrels.get(reader);
+				// ranked lists of the replaced reader can no longer be hit
+				if (previousReader != null && resultCache != null)
+					resultCache.invalidate(previousReader);
+				return searcher;
+			}
+		};
+	}
+	
+	// the shared searcher manager, opened on the current index when needed
+	synchronized SearcherManager searcherManager() throws IOException {
+		if (searcherManager == null)
+			openSearcher();
+		return searcherManager;
+	}
+	
+	// the searcher of the open index, one over all shards for a sharded index; every
+	// searcher acquired has to be given back with release()
+	synchronized IndexSearcher acquire() throws IOException {
+		if (shardedIndex == null)
+			return searcherManager().acquire();
+		shardedSearcher.getIndexReader().incRef();
+		return shardedSearcher;
+	}
+	
+	// SearcherManager releases a searcher the same way, by decrementing its reader's reference
+	// count, which also works after the searcher was replaced or closed
+	void release(IndexSearcher searcher) throws IOException {
+		searcher.getIndexReader().decRef();
+	}
+	
+	// re-opens the shared searcher if the index was changed, by upsert/delete or by another writer;
+	// sharded indexes never change once opened
+	public synchronized void refresh() throws IOException {
+		if (shardedIndex == null)
+			searcherManager().maybeRefreshBlocking();
+	}
+	
+	// the index writers of index() and openIndex() need the write lock of the live writer
+	private synchronized void closeLiveWriter() throws IOException {
+		if (liveWriter != null)
+			closeSearcher();
+	}
+	
+	// also closes the live writer, which commits its pending changes
+	private synchronized void closeSearcher() throws IOException {
+		try {
+			if (searcherManager != null && resultCache != null) {
+				IndexSearcher searcher = searcherManager.acquire();
+				try {
+					resultCache.invalidate(searcher.getIndexReader());
+				} finally {
+					searcherManager.release(searcher);
+				}
+			}
+			if (shardedIndex != null && resultCache != null)
+				resultCache.invalidate(shardedIndex.getReader());
+			if (searcherManager != null)
+				searcherManager.close();
+			if (liveWriter != null)
+				liveWriter.close();
+		} finally {
+			IOUtils.close(searchDirectory, shardedIndex);
+			searcherManager = null;
+			liveWriter = null;
+			searchDirectory = null;
+			shardedIndex = null;
+			shardedSearcher = null;
+		}
 	}
 	
-	public List<double[]> search(String inTitle, List<String> notInTitle, String inAbstract, List<String> notInAbstract, List<String> inSearchTaskNumber, List<String> inQuery) throws IOException {
+	// releases the shared searcher and the executors, searches already running keep their reader until they finish
+	public synchronized void close() throws IOException {
+		if (batchExecutor != null)
+			batchExecutor.shutdown();
+		if (searchExecutor != null)
+			searchExecutor.shutdown();
+		if (shardExecutor != null)
+			shardExecutor.shutdown();
+		batchExecutor = null;
+		searchExecutor = null;
+		shardExecutor = null;
+		closeSearcher();
+	}
+	
+	// a config can only be used by one writer, so every writer gets its own copy
+	private IndexWriterConfig writerConfig(OpenMode mode) {
+		IndexWriterConfig config = new IndexWriterConfig(standardAnalyzer);
+		config.setSimilarity(iwc.getSimilarity());
+		config.setOpenMode(mode);
+		indexing.apply(config);
+		return config;
+	}
+	
+	private void write(Path path, Iterable<DocumentInCollection> docs, String fingerprint) throws IOException {
+		try (Directory fsDirectory = directoryType.open(path);
+				IndexWriter writer = new IndexWriter(fsDirectory, writerConfig(OpenMode.CREATE))) {
+			// the whole collection is indexed, searches filter by task
+			long start = metrics.start();
+			BulkIndexer.Stats stats = new BulkIndexer(writer, indexing).index(docs.iterator());
+			if (indexing.getMaxSegments() > 0)
+				writer.forceMerge(indexing.getMaxSegments());
+			LOGGER.info(stats.toString() + " into " + path);
+			if (fingerprint != null)
+				IndexCatalog.setFingerprint(writer, fingerprint);
+			writer.commit();
+			metrics.stop(Metrics.Phase.INDEX, start);
+			metrics.count(Metrics.Counter.DOCS_INDEXED, stats.getDocs());
+			if (Metrics.isEnabled())
+				metrics.count(Metrics.Counter.INDEX_BYTES, sizeOf(fsDirectory));
+		}
+	}
+	
+	// makes the index at path hold exactly the given documents: new documents are added,
+	// changed ones replaced by key and the ones no longer in docs deleted
+	private void sync(Path path, Iterable<DocumentInCollection> docs, String fingerprint) throws IOException {
+		try (Directory fsDirectory = directoryType.open(path);
+				IndexWriter writer = new IndexWriter(fsDirectory, writerConfig(OpenMode.CREATE_OR_APPEND))) {
+			long start = metrics.start();
+			// content hash of every document currently in the index, by key
+			Map<String, Long> indexed = new HashMap<String, Long>();
+			try (DirectoryReader reader = DirectoryReader.open(writer)) {
+				for (LeafReaderContext leaf : reader.leaves()) {
+					Bits liveDocs = leaf.reader().getLiveDocs();
+					BinaryDocValues ids = DocValues.getBinary(leaf.reader(), "id");
+					NumericDocValues hashes = DocValues.getNumeric(leaf.reader(), "content_hash");
+					for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+						if (liveDocs == null || liveDocs.get(doc))
+							indexed.put(ids.get(doc).utf8ToString(), hashes.get(doc));
+					}
+				}
+			}
+			IndexedDocument fields = new IndexedDocument(indexing.getProfile());
+			int added = 0, updated = 0;
+			for (DocumentInCollection doc : docs) {
+				Long hash = indexed.remove(doc.getKey());
+				if (hash == null) {
+					writer.addDocument(fields.set(doc));
+					added++;
+				} else if (hash != doc.getContentHash()) {
+					writer.updateDocument(new Term("id", doc.getKey()), fields.set(doc));
+					updated++;
+				}
+			}
+			// whatever was not seen is gone from the corpus
+			List<Term> removed = new ArrayList<Term>(indexed.size());
+			for (String key : indexed.keySet())
+				removed.add(new Term("id", key));
+			writer.deleteDocuments(removed.toArray(new Term[removed.size()]));
+			LOGGER.info("Synced " + path + ": " + added + " added, " + updated + " updated, " + removed.size() + " deleted");
+			IndexCatalog.setFingerprint(writer, fingerprint);
+			writer.commit();
+			metrics.stop(Metrics.Phase.INDEX, start);
+			metrics.count(Metrics.Counter.DOCS_INDEXED, added + updated);
+		}
+	}
+	
+	// total size of the files of an index
+	private static long sizeOf(Directory directory) throws IOException {
+		long size = 0;
+		for (String file : directory.listAll()) {
+			if (!file.equals(IndexWriter.WRITE_LOCK_NAME))
+				size += directory.fileLength(file);
+		}
+		return size;
+	}
+	
+	public PrecisionRecallList search(String inTitle, List<String> notInTitle, String inAbstract, List<String> notInAbstract, List<String> inSearchTaskNumber, List<String> inQuery) throws IOException {
+		return search(String.valueOf(TaskNumber), inTitle, notInTitle, inAbstract, notInAbstract, inSearchTaskNumber, inQuery);
+	}
+	
+	// queryId identifies the query in the run file
+	public PrecisionRecallList search(String queryId, String inTitle, List<String> notInTitle, String inAbstract, List<String> notInAbstract, List<String> inSearchTaskNumber, List<String> inQuery) throws IOException {
 		
 		//printQuery(inTitle, notInTitle, inAbstract, notInAbstract, inSearchTaskNumber, inQuery);
 
-		List<double[]> precisionRecall = new LinkedList<double[]>();
+		PrecisionRecallList precisionRecall = new PrecisionRecallList();
+		Set<String> relevantDocs = new LinkedHashSet<String>();
 		
-
-		QueryParser qp = new QueryParser("", iwc.getAnalyzer());
-		String[] inTitleSplit = null;
-		String[] inAbstractSplit = null;
+		// implement the Lucene search here
+		IndexSearcher searcher = acquire();
 		try {
-			inTitleSplit = qp.parse(inTitle).toString().split(" ");
-			inAbstractSplit = qp.parse(inAbstract).toString().split(" ");
-		} catch (Exception e) {
-			e.printStackTrace();
+			BooleanQuery booleanQuery = buildQuery(inTitle, notInTitle, inAbstract, notInAbstract, out);
+			precisionRecall = evaluate(searcher, booleanQuery, queryId, relevantDocs);
+		} finally {
+			release(searcher);
 		}
 		
-		List<String> relevantDocs = new LinkedList<String>();
-		
-		// implement the Lucene search here
+		this.logResults(relevantDocs);
+		return precisionRecall;
+	}
+	
+	// runs the queries concurrently against one searcher, the results are in input order
+	public List<QueryResult> searchBatch(List<QuerySpec> queries) throws IOException {
+		ExecutorService pool = batchExecutor();
+		IndexSearcher searcher = acquire();
 		try {
-			IndexReader reader = DirectoryReader.open(FSDirectory.open(Paths.get("index/")));
-			IndexSearcher searcher = new IndexSearcher(reader);
-			searcher.setSimilarity(iwc.getSimilarity());
-			Builder builder = new BooleanQuery.Builder();
-			if(inTitle!=null)
-			{
-				System.out.println("In title:");
-				for(String eachWord : inTitleSplit){
-					Query query = new TermQuery(new Term("title", eachWord));
-					System.out.println(eachWord);
-					builder.add(query, BooleanClause.Occur.SHOULD);
-				}
+			List<Future<QueryResult>> futures = new ArrayList<Future<QueryResult>>(queries.size());
+			for (QuerySpec spec : queries) {
+				futures.add(pool.submit(() -> {
+					long start = System.nanoTime();
+					Set<String> relevantDocs = new LinkedHashSet<String>();
+					BooleanQuery query = buildQuery(spec.getInTitle(), spec.getNotInTitle(), spec.getInAbstract(), spec.getNotInAbstract(), null);
+					String queryId = spec.getId() != null ? spec.getId() : String.valueOf(TaskNumber);
+					PrecisionRecallList precisionRecall = evaluate(searcher, query, queryId, relevantDocs);
+					return new QueryResult(spec, precisionRecall, new ArrayList<String>(relevantDocs), System.nanoTime() - start);
+				}));
 			}
-			if(notInTitle!=null)
-			{
-				for(String eachWord : notInTitle){
-					Query query = new TermQuery(new Term("title", eachWord));
-					builder.add(query, BooleanClause.Occur.MUST_NOT);
+			List<QueryResult> results = new ArrayList<QueryResult>(queries.size());
+			for (Future<QueryResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					throw new IOException(e.getCause());
 				}
 			}
-			if(inAbstract!=null)
-			{
-				System.out.println("In abstract:");
-				for(String eachWord : inAbstractSplit){
-					Query query = new TermQuery(new Term("abstract_text", eachWord));
-					System.out.println(eachWord);
-					builder.add(query, BooleanClause.Occur.SHOULD);
-				}
+			return results;
+		} finally {
+			release(searcher);
+		}
+	}
+	
+	// analyzes the query text and builds the boolean query restricted to the search task,
+	// the analyzed terms are printed to log unless it is null
+	BooleanQuery buildQuery(String inTitle, List<String> notInTitle, String inAbstract, List<String> notInAbstract, PrintStream log) throws IOException {
+		long start = metrics.start();
+		Builder builder = new BooleanQuery.Builder();
+		builder.add(IntPoint.newExactQuery("search_task_number", TaskNumber), BooleanClause.Occur.FILTER);
+		// next to a filter, optional clauses would no longer be required to match
+		builder.setMinimumNumberShouldMatch(1);
+		if(inTitle!=null)
+		{
+			if(log!=null) log.println("In title:");
+			for(TermQuery query : QUERY_TERMS.get(analyzerKey, standardAnalyzer, "title", inTitle)){
+				if(log!=null) log.println(query.getTerm().text());
+				builder.add(query, BooleanClause.Occur.SHOULD);
 			}
-			if(notInAbstract!=null)
-			{
-				for(String eachWord : notInAbstract){
-					Query query = new TermQuery(new Term("abstract_text", eachWord));
-					builder.add(query, BooleanClause.Occur.MUST_NOT);
-				}
+		}
+		if(notInTitle!=null)
+		{
+			for(String eachWord : notInTitle){
+				Query query = new TermQuery(new Term("title", eachWord));
+				builder.add(query, BooleanClause.Occur.MUST_NOT);
 			}
-			
-			/// get the amount of Relevant Documents in the Task Number (relevant == 1)
-			int _amountRelevantDocInTaskNumber = 0;
-			for(int doc_index = 0; doc_index<reader.maxDoc(); doc_index++){
-				Document d = reader.document(doc_index);
-				if (d.get("relevant").equals("1")&&d.get("search_task_number").equals(TaskNumber.toString())){
-					_amountRelevantDocInTaskNumber++;
-				}
+		}
+		if(inAbstract!=null)
+		{
+			if(log!=null) log.println("In abstract:");
+			for(TermQuery query : QUERY_TERMS.get(analyzerKey, standardAnalyzer, "abstract_text", inAbstract)){
+				if(log!=null) log.println(query.getTerm().text());
+				builder.add(query, BooleanClause.Occur.SHOULD);
 			}
-			
-			BooleanQuery booleanQuery = builder.build();
-			int hitsPerPage = 100000000;
-			TopDocs docs = searcher.search(booleanQuery, hitsPerPage);
-			ScoreDoc[] hits = docs.scoreDocs;
-			
-			// Loop through result list at Precision K 
-			for(int nTopDocs = 1; nTopDocs<=hits.length ; nTopDocs+=1){
-				int countRelevantDoc = 0;
-				for(int i=0;i<hits.length && i< nTopDocs;++i) {
-				    Document d = searcher.doc(hits[i].doc);
-				    // Count Relevant Document retrieved for Precision at K
-				    if(d.get("relevant").equals("1")&&d.get("search_task_number").equals(TaskNumber.toString())){
-				    	countRelevantDoc++;
-				    	String title = d.get("title");
-				    	if (!relevantDocs.contains(title)){
-				    		relevantDocs.add(title);
-				    	}
-				    }
-				}
-				// Add recall, precision
-				double recall = (double)countRelevantDoc/(double)_amountRelevantDocInTaskNumber;
-				double precision = (double)countRelevantDoc/(double)nTopDocs;
-				
-				double[] precRec = {recall, precision};
-				precisionRecall.add(precRec);
+		}
+		if(notInAbstract!=null)
+		{
+			for(String eachWord : notInAbstract){
+				Query query = new TermQuery(new Term("abstract_text", eachWord));
+				builder.add(query, BooleanClause.Occur.MUST_NOT);
 			}
-			
-		} catch (Exception e1) {
-			e1.printStackTrace();
 		}
+		BooleanQuery query = builder.build();
+		metrics.stop(Metrics.Phase.ANALYZE, start);
+		return query;
+	}
+	
+	// ranks the query and computes (recall, precision) at every rank, titles of the
+	// relevant documents retrieved are added to relevantDocs
+	private PrecisionRecallList evaluate(IndexSearcher searcher, BooleanQuery query, String queryId, Collection<String> relevantDocs) throws IOException {
+		PrecisionRecallList precisionRecall = new PrecisionRecallList();
 		
-		this.logResults(relevantDocs);
+		/// get the amount of Relevant Documents in the Task Number (relevant == 1)
+		Qrels qrels = Qrels.get(searcher.getIndexReader());
+		FixedBitSet relevant = qrels.relevant(TaskNumber);
+		int _amountRelevantDocInTaskNumber = qrels.relevantCount(TaskNumber);
+		
+		RankedList hits = rank(searcher, query);
+		if (runWriter != null)
+			writeRun(searcher.getIndexReader(), queryId, hits);
+		long start = metrics.start();
+		if (evaluationTable != null)
+			evaluationTable.evaluate(evaluationRun, queryId, hits, relevant, _amountRelevantDocInTaskNumber);
+		
+		// Walk the result list once, accumulating the relevant documents up to Precision K
+		int countRelevantDoc = 0;
+		for(int nTopDocs = 1; nTopDocs<=hits.size() ; nTopDocs+=1){
+			int doc = hits.doc(nTopDocs - 1);
+			// Count Relevant Document retrieved for Precision at K
+			if(relevant.get(doc)){
+				countRelevantDoc++;
+				relevantDocs.add(title(searcher.getIndexReader(), doc));
+			}
+			// Add recall, precision
+			double recall = (double)countRelevantDoc/(double)_amountRelevantDocInTaskNumber;
+			double precision = (double)countRelevantDoc/(double)nTopDocs;
+			precisionRecall.add(recall, precision);
+			// the rest of the list can only lower precision once every relevant document is found
+			if(stopAtFullRecall && countRelevantDoc == _amountRelevantDocInTaskNumber){
+				break;
+			}
+		}
+		metrics.stop(Metrics.Phase.EVALUATE, start);
 		return precisionRecall;
 	}
 	
-	public void logResults(List<String> results){
-		for(int i = 0; i < results.size(); i++){
-			this.LOGGER.log(Level.INFO,results.get(i));
+	// the rankDepth best hits of the query under the similarity of the searcher
+	RankedList rank(IndexSearcher searcher, BooleanQuery query) throws IOException {
+		return rank(searcher, query, rankDepth);
+	}
+	
+	// the depth best hits of the query under the similarity of the searcher
+	RankedList rank(IndexSearcher searcher, BooleanQuery query, int depth) throws IOException {
+		long start = metrics.start();
+		String cacheKey = resultCache == null ? null
+				: ResultCache.key(searcher.getIndexReader(), searcher.getSimilarity(true), depth, query);
+		RankedList hits = cacheKey == null ? null : resultCache.get(cacheKey);
+		boolean cached = hits != null;
+		ShardedIndex sharded = shardedIndex;
+		if (cached) {
+			metrics.count(Metrics.Counter.RESULT_CACHE_HITS, 1);
+		} else if (sharded != null && searcher.getIndexReader() == sharded.getReader()) {
+			// every shard is ranked on its own thread, the ranked lists are merged
+			hits = sharded.search(query, depth, searcher.getSimilarity(true));
+		} else if (searchExecutor != null && query.clauses().size() - 1 >= segmentParallelClauses) {
+			// long queries are ranked segment by segment on the search executor,
+			// the task filter does not count as a clause
+			hits = searcher.search(query, RankedListCollector.manager(depth));
+		} else {
+			RankedListCollector collector = new RankedListCollector(depth);
+			searcher.search(query, collector);
+			hits = collector.getRankedList();
+		}
+		if (cacheKey != null && !cached) {
+			metrics.count(Metrics.Counter.RESULT_CACHE_MISSES, 1);
+			metrics.count(Metrics.Counter.RESULT_CACHE_EVICTIONS, resultCache.put(cacheKey, hits));
+		}
+		metrics.stop(Metrics.Phase.SEARCH, start);
+		metrics.count(Metrics.Counter.QUERIES, 1);
+		// a cached list was scored when it was put in the cache
+		if (!cached)
+			metrics.count(Metrics.Counter.HITS_SCORED, hits.getTotalHits());
+		return hits;
+	}
+	
+	// a searcher on the reader of the shared one that ranks with another similarity,
+	// norms and postings are the same for every similarity so no index has to be rebuilt
+	IndexSearcher searcher(IndexReader reader, Similarity similarity) {
+		IndexSearcher searcher = new IndexSearcher(reader, searchExecutor);
+		searcher.setSimilarity(similarity);
+		searcher.setQueryCache(TASK_FILTERS);
+		searcher.setQueryCachingPolicy(TASK_FILTER_POLICY);
+		return searcher;
+	}
+	
+	// the title of a hit, stored in full indexes and from the document store for lean ones;
+	// the key of the hit when there is no title
+	String title(IndexReader reader, int doc) throws IOException {
+		if (indexing.getProfile() == IndexingOptions.Profile.FULL) {
+			metrics.count(Metrics.Counter.STORED_FIELD_LOADS, 1);
+			return reader.document(doc, TITLE_FIELD).get("title");
+		}
+		String key = MultiDocValues.getBinaryValues(reader, "id").get(doc).utf8ToString();
+		String title = documentStore != null ? documentStore.getTitle(key) : null;
+		return title != null ? title : key;
+	}
+	
+	// queues the ranked list for the run file, documents are identified by their key
+	private void writeRun(IndexReader reader, String queryId, RankedList hits) throws IOException {
+		BinaryDocValues ids = MultiDocValues.getBinaryValues(reader, "id");
+		String[] docIds = new String[hits.size()];
+		for (int i = 0; i < docIds.length; i++)
+			docIds[i] = ids.get(hits.doc(i)).utf8ToString();
+		runWriter.write(queryId, runTag, docIds, hits.scores(), hits.size());
+	}
+	
+	// writes the relevance of every document of the task in TREC qrels format
+	public void writeQrels(Writer qrels, String queryId) throws IOException {
+		IndexSearcher searcher = acquire();
+		try {
+			IndexReader reader = searcher.getIndexReader();
+			BinaryDocValues ids = MultiDocValues.getBinaryValues(reader, "id");
+			NumericDocValues tasks = MultiDocValues.getNumericValues(reader, "search_task_number");
+			Bits liveDocs = MultiFields.getLiveDocs(reader);
+			FixedBitSet relevant = Qrels.get(reader).relevant(TaskNumber);
+			for (int doc = 0; doc < reader.maxDoc(); doc++) {
+				if ((liveDocs == null || liveDocs.get(doc)) && tasks.get(doc) == TaskNumber)
+					qrels.write(queryId + " 0 " + ids.get(doc).utf8ToString() + " " + (relevant.get(doc) ? 1 : 0) + "\n");
+			}
+		} finally {
+			release(searcher);
+		}
+	}
+	
+	// one log record per query instead of one per title
+	public void logResults(Collection<String> results){
+		if(!results.isEmpty()){
+			LOGGER.log(Level.INFO, String.join(System.lineSeparator(), results));
 		}
 	}
 	
 	public void printQuery(List<String> inTitle, List<String> notInTitle, List<String> inAbstract, List<String> notInAbstract, List<String> inSearchTaskNumber, List<String> inQuery) {
-		System.out.print("Search (");
+		out.print("Search (");
 		if (inTitle != null) {
-			System.out.print("in title: "+inTitle);
+			out.print("in title: "+inTitle);
 			if (notInTitle != null || inAbstract != null || notInAbstract != null || inSearchTaskNumber != null || inQuery != null)
-				System.out.print("; ");
+				out.print("; ");
 		}
 		if (notInTitle != null) {
-			System.out.print("not in title: "+notInTitle);
+			out.print("not in title: "+notInTitle);
 			if (inAbstract != null || notInAbstract != null || inSearchTaskNumber != null || inQuery != null)
-				System.out.print("; ");
+				out.print("; ");
 		}
 		if (inAbstract != null) {
-			System.out.print("in abstract: "+inAbstract);
+			out.print("in abstract: "+inAbstract);
 			if (notInAbstract != null || inSearchTaskNumber != null || inQuery != null)
-				System.out.print("; ");
+				out.print("; ");
 		}
 		if (notInAbstract != null) {
-			System.out.print("not in description: "+notInAbstract);
+			out.print("not in description: "+notInAbstract);
 			if (inSearchTaskNumber != null || inQuery != null)
-				System.out.print("; ");
+				out.print("; ");
 		}
 		if (inSearchTaskNumber != null) {
-			System.out.print("search task number: "+inSearchTaskNumber);
+			out.print("search task number: "+inSearchTaskNumber);
 			if (inQuery != null)
-				System.out.print("; ");
+				out.print("; ");
 		}
 		if (inQuery != null)
-			System.out.print("query: "+inQuery);
-		System.out.println("):");
+			out.print("query: "+inQuery);
+		out.println("):");
 	}
 	
-	public void printResults(List<double[]> results) {
+	public void printResults(PrecisionRecallList results) {
 		if (results.size() > 0) {
 			//Collections.sort(results);
+			StringBuilder sb = new StringBuilder();
 			for (int i=0; i<results.size(); i++){
 				//System.out.println(" " + (i+1) + ". " + results.get(i));
-				LOGGER.info(" " + (i+1) + ". " + results.get(i)[0] + ", " + results.get(i)[1]);
+				if (i > 0) sb.append(System.lineSeparator());
+				sb.append(" " + (i+1) + ". " + results.recall(i) + ", " + results.precision(i));
 			}
+			LOGGER.info(sb.toString());
 		}
 		else
-			System.out.println(" no results");
+			out.println(" no results");
 	}
 	
 	public static void main(String[] args) throws IOException {
@@ -387,60 +1002,167 @@ public class LuceneSearchApp {
 		};
 		int taskNumber = 2;
 		if (args.length > 0) {
-			// Loop through queries
-			List<double[]> averageCurves = new ArrayList<double[]>();
-			for(int query = 0; query < queries.length; query++) {
-				
-				///  LOOP THROUGH 6 Pre-defined Methods
-				for (Integer method = 1; method<=6; method++){
-					LuceneSearchApp engine = new LuceneSearchApp();
-					
-					DocumentCollectionParser parser = new DocumentCollectionParser();
-					parser.parse(args[0]);
-					List<DocumentInCollection> docs = parser.getDocuments();
-					
-					// SET RANKING METHOD & INDEX
-					String indexingMethod = method.toString();
-					engine.setRankingMethod(indexingMethod, taskNumber);
-					engine.index(docs);
-		
-					List<double[]> results;
-					
-					results = engine.search(queries[query], null, queries[query], null, null, null);
-					
-					// Calculate average
-					
-					double[] precRecCurve = getInterpolated11stepPrecisionRecallCurve(results);
-					// Create base curve if it doesn't exist
-					if(averageCurves.size() < method) {
-						double[] baseCurve = new double[11];
-						averageCurves.add(baseCurve);
-					}
-					// Online average calculation
-					double[] baseCurve = averageCurves.get(method - 1);
-					for(int i = 0; i < 11; i++) {
-						baseCurve[i] += precRecCurve[i] / queries.length;
-					}
-					
-					System.out.println("\n--- Method " + method + " ---");
-					printSingleCurve(precRecCurve);
-					
-					engine.printResults(results);
+			// Options after the corpus path
+			DirectoryType directoryType = DirectoryType.FS;
+			boolean compareDirectories = false;
+			Path metricsFile = null;
+			Path runDirectory = null;
+			boolean incremental = false;
+			boolean table = false;
+			int significanceSamples = 0;
+			String sweepMethod = null;
+			IndexingOptions indexing = new IndexingOptions();
+			int indexThreads = 0;
+			int shards = 1;
+			ShardRouter shardRouter = ShardRouter.HASH;
+			int servePort = -1;
+			int workers = Runtime.getRuntime().availableProcessors();
+			String serveMethod = "1";
+			for (int i = 1; i < args.length; i++) {
+				if (args[i].equals("-directory") && i + 1 < args.length && args[i + 1].matches("fs|mmap|nio|ram"))
+					directoryType = DirectoryType.parse(args[++i]);
+				else if (args[i].equals("-compare-directories"))
+					compareDirectories = true;
+				else if (args[i].equals("-metrics") && i + 1 < args.length)
+					metricsFile = Paths.get(args[++i]);
+				else if (args[i].equals("-runs") && i + 1 < args.length)
+					runDirectory = Paths.get(args[++i]);
+				else if (args[i].equals("-incremental"))
+					incremental = true;
+				else if (args[i].equals("-table"))
+					table = true;
+				else if (args[i].equals("-significance") && i + 1 < args.length)
+					significanceSamples = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-sweep") && i + 1 < args.length)
+					sweepMethod = args[++i];
+				else if (args[i].equals("-profile") && i + 1 < args.length && args[i + 1].matches("full|lean"))
+					indexing.setProfile(IndexingOptions.Profile.valueOf(args[++i].toUpperCase(Locale.ROOT)));
+				else if (args[i].equals("-codec") && i + 1 < args.length && args[i + 1].matches("speed|compression"))
+					indexing.setStoredFieldsMode(Lucene50StoredFieldsFormat.Mode.valueOf("BEST_" + args[++i].toUpperCase(Locale.ROOT)));
+				else if (args[i].equals("-threads") && i + 1 < args.length && args[i + 1].matches("[1-9][0-9]*"))
+					indexThreads = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-shards") && i + 1 < args.length && args[i + 1].matches("[1-9][0-9]*"))
+					shards = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-router") && i + 1 < args.length && args[i + 1].matches("hash|task"))
+					shardRouter = ShardRouter.parse(args[++i]);
+				else if (args[i].equals("-serve") && i + 1 < args.length && args[i + 1].matches("[0-9]+"))
+					servePort = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-workers") && i + 1 < args.length && args[i + 1].matches("[1-9][0-9]*"))
+					workers = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-method") && i + 1 < args.length)
+					serveMethod = args[++i];
+				else {
+					System.out.println("ERROR: unknown option " + args[i] + ", expected -directory fs|mmap|nio|ram, -compare-directories, -metrics file.json|file.csv, -runs directory, -incremental, -table, -significance samples, -sweep method, -profile full|lean, -codec speed|compression, -threads n, -shards n, -router hash|task, -serve port, -workers n or -method method");
+					return;
 				}
 			}
 			
-			printCurves(averageCurves);
+			// a sharded build keeps every shard's writer busy unless told otherwise
+			indexing.setThreads(indexThreads > 0 ? indexThreads : Math.max(indexing.getThreads(), shards));
+			Metrics.setEnabled(metricsFile != null);
+			
+			if (compareDirectories) {
+				DirectoryComparison.run(args[0], taskNumber, queries, System.out);
+				return;
+			}
+			
+			if (servePort >= 0) {
+				// the server writes headers and body separately, with Nagle's algorithm the body then
+				// waits for the client's delayed ACK, about 40 ms per request; read once by the JDK
+				if (System.getProperty("sun.net.httpserver.nodelay") == null)
+					System.setProperty("sun.net.httpserver.nodelay", "true");
+				serve(args[0], serveMethod, taskNumber, servePort, workers, directoryType, indexing, shards, shardRouter);
+				return;
+			}
+			
+			if (sweepMethod != null) {
+				// similarity parameters on the index of the method's analysis chain, best by MAP
+				try (ParameterSweep sweep = new ParameterSweep(args[0], taskNumber, Runtime.getRuntime().availableProcessors())) {
+					sweep.setDirectoryType(directoryType);
+					sweep.setIndexingOptions(indexing);
+					sweep.setSharding(shards, shardRouter);
+					EvaluationTable evaluation = sweep.run(sweepMethod, ParameterSweep.defaultGrid(), queries, new Evaluator());
+					System.out.println("\n=== Sweep (method " + sweepMethod + " analysis) ===\n");
+					evaluation.print(System.out);
+					System.out.println("\nbest map: " + ParameterSweep.best(evaluation, Evaluator.AP));
+				}
+				if (metricsFile != null)
+					Metrics.export(metricsFile);
+				return;
+			}
+			
+			// Run the queries with the 6 pre-defined methods on all cores
+			try (ExperimentExecutor executor = new ExperimentExecutor(args[0], taskNumber, Runtime.getRuntime().availableProcessors())) {
+				executor.setDirectoryType(directoryType);
+				executor.setRunDirectory(runDirectory);
+				executor.setIncremental(incremental);
+				executor.setIndexingOptions(indexing);
+				executor.setSharding(shards, shardRouter);
+				if (table || significanceSamples > 0)
+					executor.setEvaluator(new Evaluator());
+				List<double[]> averageCurves = executor.run(queries, 6, System.out);
+				printCurves(averageCurves);
+				if (table) {
+					System.out.println("\n=== Measures ===\n");
+					executor.getEvaluationTable().print(System.out);
+				}
+				if (significanceSamples > 0) {
+					// every pair of methods on per-query AP and P@10
+					EvaluationTable evaluation = executor.getEvaluationTable();
+					SignificanceTest test = new SignificanceTest(significanceSamples, 42, Runtime.getRuntime().availableProcessors());
+					List<String> columns = Arrays.asList(evaluation.getEvaluator().columns());
+					for (String measure : new String[] {"ap", "p@10"}) {
+						System.out.println("\n=== Significance (" + measure + ", " + significanceSamples + " samples) ===\n");
+						SignificanceTest.print(test.compareAll(evaluation, columns.indexOf(measure)), measure, System.out);
+					}
+				}
+			}
+			if (metricsFile != null)
+				Metrics.export(metricsFile);
 		}
 		else
 			System.out.println("ERROR: the path of a RSS Feed file has to be passed as a command line argument.");
 	}
 	
+	// serves the queries of the task with one ranking method until the JVM is stopped
+	private static void serve(String corpus, String method, int taskNumber, int port, int workers, DirectoryType directoryType,
+			IndexingOptions indexing, int shards, ShardRouter shardRouter) throws IOException {
+		LuceneSearchApp engine = new LuceneSearchApp();
+		engine.setDirectoryType(directoryType);
+		engine.setIndexingOptions(indexing);
+		engine.setSharding(shards, shardRouter);
+		if (indexing.getProfile() == IndexingOptions.Profile.LEAN)
+			engine.setDocumentStore(DocumentStore.open(corpus));
+		engine.setRankingMethod(method, taskNumber);
+		engine.openIndex(corpus);
+		QueryServer server = new QueryServer(engine, new InetSocketAddress(port), workers);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.close();
+			try {
+				engine.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "closing the engine failed", e);
+			}
+		}));
+		server.start();
+		System.out.println("Serving method " + method + " of task " + taskNumber + " on http://localhost:" + server.getAddress().getPort() + "/search with " + workers + " workers");
+	}
+	
 	public static double FMeasure(double precision, double recall) {
 		return 2. / (1. / precision + 1. / recall);
 	}
 	
 	public static double[] getInterpolated11stepPrecisionRecallCurve(
 			List<double[]> recPrec) {
+		PrecisionRecallList list = new PrecisionRecallList(recPrec.size());
+		for(double[] pair : recPrec) {
+			list.add(pair[0], pair[1]);
+		}
+		return getInterpolated11stepPrecisionRecallCurve(list);
+	}
+	
+	public static double[] getInterpolated11stepPrecisionRecallCurve(
+			PrecisionRecallList recPrec) {
 		// Calculate max precision of list in reverse. When a list element with
 		// a recall smaller than current threshold is encountered, the current
 		// max value is added to the curve array and the threshold is
@@ -449,8 +1171,13 @@ public class LuceneSearchApp {
 		double[] curve = new double[11];
 		int threshold = 10;
 		
+		// An empty result list never reaches any threshold
+		if(recPrec.size() == 0) {
+			return curve;
+		}
+		
 		// Zero values if result does not reach a threshold
-		double lastRecall = recPrec.get(recPrec.size() - 1)[0];
+		double lastRecall = recPrec.recall(recPrec.size() - 1);
 		for(int i = threshold; i >= 0; i--) {
 			if(lastRecall < (double)threshold / 10.) {
 				curve[i] = 0.;
@@ -459,9 +1186,8 @@ public class LuceneSearchApp {
 		}
 		
 		for(int i = recPrec.size() - 1; i >= 0; i--) {
-			double[] pair = recPrec.get(i);
-			double recall = pair[0];
-			double precision = pair[1];
+			double recall = recPrec.recall(i);
+			double precision = recPrec.precision(i);
 			while(recall <= (double)threshold / 10.) {
 				curve[threshold] = max;
 				threshold--;
@@ -476,9 +1202,13 @@ public class LuceneSearchApp {
 	}
 	
 	public static void printSingleCurve(double[] curve) {
+		printSingleCurve(curve, System.out);
+	}
+	
+	public static void printSingleCurve(double[] curve, PrintStream out) {
 		for(int i = 0; i < 11; i++) {
 			String threshold = i < 10 ? "0." + i : "1.0";
-			System.out.println(threshold + ", " + curve[i]);
+			out.println(threshold + ", " + curve[i]);
 		}
 	}
 	
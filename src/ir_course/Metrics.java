@@ -0,0 +1,206 @@
+/*
+ * Counters and latency histograms per phase and ranking configuration
+ * Recording is off by default; while off, start() returns 0 and every
+ * other call returns after a single flag check. The collected metrics of
+ * all configurations can be exported as JSON or CSV at the end of a run.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Metrics {
+
+	public enum Phase {
+		PARSE, ANALYZE, INDEX, SEARCH, EVALUATE
+	}
+
+	public enum Counter {
+		DOCS_PARSED, DOCS_INDEXED, QUERIES, HITS_SCORED, STORED_FIELD_LOADS, INDEX_BYTES, RESULT_CACHE_HITS, RESULT_CACHE_MISSES, RESULT_CACHE_EVICTIONS
+	}
+
+	// latency histogram with power-of-two nanosecond buckets
+	public static class Histogram {
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		public void record(long nanos) {
+			buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+			count.increment();
+			total.add(nanos);
+			long current;
+			while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos))
+				;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getTotalNanos() {
+			return total.sum();
+		}
+
+		public long getMaxNanos() {
+			return max.get();
+		}
+
+		public double getMeanNanos() {
+			long n = getCount();
+			return n == 0 ? 0 : (double) getTotalNanos() / n;
+		}
+
+		// upper bound of the bucket holding the given quantile
+		public long getQuantileNanos(double quantile) {
+			long n = getCount();
+			if (n == 0)
+				return 0;
+			long rank = (long) Math.ceil(quantile * n);
+			long seen = 0;
+			for (int i = 0; i < 64; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank)
+					return Math.min(i == 63 ? Long.MAX_VALUE : (2L << i) - 1, getMaxNanos());
+			}
+			return getMaxNanos();
+		}
+	}
+
+	private static volatile boolean enabled = false;
+	private static final Map<String, Metrics> registry = new ConcurrentSkipListMap<String, Metrics>();
+
+	private final String configuration;
+	private final Histogram[] phases = new Histogram[Phase.values().length];
+	private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+	private Metrics(String configuration) {
+		this.configuration = configuration;
+		for (int i = 0; i < phases.length; i++)
+			phases[i] = new Histogram();
+		for (int i = 0; i < counters.length; i++)
+			counters[i] = new LongAdder();
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+
+	// the metrics of a ranking configuration, shared by every engine using it
+	public static Metrics get(String configuration) {
+		return registry.computeIfAbsent(configuration, Metrics::new);
+	}
+
+	// forgets everything recorded so far
+	public static void reset() {
+		registry.clear();
+	}
+
+	public String getConfiguration() {
+		return configuration;
+	}
+
+	// start time of a phase, 0 while recording is off
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	public void stop(Phase phase, long start) {
+		if (start != 0)
+			phases[phase.ordinal()].record(System.nanoTime() - start);
+	}
+
+	public void count(Counter counter, long n) {
+		if (enabled)
+			counters[counter.ordinal()].add(n);
+	}
+
+	public Histogram getHistogram(Phase phase) {
+		return phases[phase.ordinal()];
+	}
+
+	public long getCount(Counter counter) {
+		return counters[counter.ordinal()].sum();
+	}
+
+	// writes every configuration as JSON or CSV, depending on the file extension
+	public static void export(Path file) throws IOException {
+		try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			if (file.toString().toLowerCase(Locale.ROOT).endsWith(".csv"))
+				writeCsv(out);
+			else
+				writeJson(out);
+		}
+	}
+
+	public static void writeJson(Writer out) throws IOException {
+		out.write("{\n  \"configurations\": [");
+		String separator = "\n";
+		for (Metrics metrics : registry.values()) {
+			out.write(separator);
+			separator = ",\n";
+			out.write("    {\n      \"configuration\": \"" + escape(metrics.configuration) + "\",\n      \"counters\": {");
+			String inner = "";
+			for (Counter counter : Counter.values()) {
+				out.write(inner + "\"" + counter.name().toLowerCase(Locale.ROOT) + "\": " + metrics.getCount(counter));
+				inner = ", ";
+			}
+			out.write("},\n      \"phases\": {");
+			inner = "\n";
+			for (Phase phase : Phase.values()) {
+				Histogram h = metrics.getHistogram(phase);
+				out.write(inner + "        \"" + phase.name().toLowerCase(Locale.ROOT) + "\": {\"count\": " + h.getCount()
+						+ ", \"total_ms\": " + format(h.getTotalNanos() / 1e6)
+						+ ", \"mean_us\": " + format(h.getMeanNanos() / 1e3)
+						+ ", \"p50_us\": " + format(h.getQuantileNanos(0.5) / 1e3)
+						+ ", \"p90_us\": " + format(h.getQuantileNanos(0.9) / 1e3)
+						+ ", \"p99_us\": " + format(h.getQuantileNanos(0.99) / 1e3)
+						+ ", \"max_us\": " + format(h.getMaxNanos() / 1e3) + "}");
+				inner = ",\n";
+			}
+			out.write("\n      }\n    }");
+		}
+		out.write("\n  ]\n}\n");
+	}
+
+	public static void writeCsv(Writer out) throws IOException {
+		out.write("configuration,type,name,count,value,total_ms,mean_us,p50_us,p90_us,p99_us,max_us\n");
+		for (Metrics metrics : registry.values()) {
+			String configuration = "\"" + metrics.configuration.replace("\"", "\"\"") + "\"";
+			for (Counter counter : Counter.values())
+				out.write(configuration + ",counter," + counter.name().toLowerCase(Locale.ROOT) + ",," + metrics.getCount(counter) + ",,,,,,\n");
+			for (Phase phase : Phase.values()) {
+				Histogram h = metrics.getHistogram(phase);
+				out.write(configuration + ",phase," + phase.name().toLowerCase(Locale.ROOT) + "," + h.getCount() + ","
+						+ "," + format(h.getTotalNanos() / 1e6)
+						+ "," + format(h.getMeanNanos() / 1e3)
+						+ "," + format(h.getQuantileNanos(0.5) / 1e3)
+						+ "," + format(h.getQuantileNanos(0.9) / 1e3)
+						+ "," + format(h.getQuantileNanos(0.99) / 1e3)
+						+ "," + format(h.getMaxNanos() / 1e3) + "\n");
+			}
+		}
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Evaluates a grid of similarities and their parameters on one index
+ * Classic, BM25 and LM Dirichlet scoring all read the same postings and
+ * length norms, so a similarity only has to be set on the searcher: the
+ * index of the analysis chain of a ranking method is opened (or built)
+ * once, the queries are analyzed once, and every grid point ranks them on
+ * the same reader with a searcher of its own, grid points in parallel.
+ */
+package ir_course;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.search.similarities.LMDirichletSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.FixedBitSet;
+
+public class ParameterSweep implements Closeable {
+
+	private final String corpus;
+	private final int taskNumber;
+	private final ExecutorService pool;
+	private DirectoryType directoryType = DirectoryType.FS;
+	private IndexingOptions indexing = new IndexingOptions();
+	private int shards = 1;
+	private ShardRouter shardRouter = ShardRouter.HASH;
+
+	public ParameterSweep(String corpus, int taskNumber, int threads) {
+		this.corpus = corpus;
+		this.taskNumber = taskNumber;
+		this.pool = Executors.newFixedThreadPool(threads);
+	}
+
+	public void setDirectoryType(DirectoryType directoryType) {
+		this.directoryType = directoryType;
+	}
+
+	// selects the catalog index of the chain, see LuceneSearchApp.setIndexingOptions
+	public void setIndexingOptions(IndexingOptions indexing) {
+		this.indexing = indexing;
+	}
+
+	// sweeps on a sharded index, see LuceneSearchApp.setSharding
+	public void setSharding(int shards, ShardRouter router) {
+		this.shards = shards;
+		this.shardRouter = router;
+	}
+
+	// BM25 at every combination of k1 and b
+	public static Map<String, Similarity> bm25Grid(float[] k1s, float[] bs) {
+		Map<String, Similarity> grid = new LinkedHashMap<String, Similarity>();
+		for (float k1 : k1s) {
+			for (float b : bs)
+				grid.put(String.format(Locale.ROOT, "bm25(%.2f,%.2f)", k1, b), new BM25Similarity(k1, b));
+		}
+		return grid;
+	}
+
+	// LM with Dirichlet smoothing at every mu
+	public static Map<String, Similarity> dirichletGrid(float[] mus) {
+		Map<String, Similarity> grid = new LinkedHashMap<String, Similarity>();
+		for (float mu : mus)
+			grid.put(String.format(Locale.ROOT, "lmd(%.0f)", mu), new LMDirichletSimilarity(mu));
+		return grid;
+	}
+
+	// tf-idf, BM25 k1 0.4..2.0 by 0.2 x b 0..1 by 0.25 and LM Dirichlet mu 100..5000
+	public static Map<String, Similarity> defaultGrid() {
+		Map<String, Similarity> grid = new LinkedHashMap<String, Similarity>();
+		grid.put("classic", new ClassicSimilarity());
+		grid.putAll(bm25Grid(new float[] {0.4f, 0.6f, 0.8f, 1.0f, 1.2f, 1.4f, 1.6f, 1.8f, 2.0f}, new float[] {0f, 0.25f, 0.5f, 0.75f, 1f}));
+		grid.putAll(dirichletGrid(new float[] {100, 250, 500, 1000, 1500, 2000, 2500, 3000, 5000}));
+		return grid;
+	}
+
+	// evaluates the queries at every grid point on the index of the analysis chain of the
+	// ranking method, the runs of the table are the names of the grid points
+	public EvaluationTable run(String method, Map<String, Similarity> grid, String[] queries, Evaluator evaluator) throws IOException {
+		String[] queryIds = new String[queries.length];
+		for (int query = 0; query < queries.length; query++)
+			queryIds[query] = taskNumber + "." + (query + 1);
+		EvaluationTable table = new EvaluationTable(evaluator, grid.keySet().toArray(new String[grid.size()]), queryIds);
+		try (LuceneSearchApp engine = new LuceneSearchApp()) {
+			engine.out = new PrintStream(new ByteArrayOutputStream(), false, "UTF-8");
+			engine.setDirectoryType(directoryType);
+			engine.setIndexingOptions(indexing);
+			engine.setSharding(shards, shardRouter);
+			// every grid point is a different cache key, caching would only evict useful entries
+			engine.setResultCache(null);
+			engine.setRankingMethod(method, taskNumber);
+			engine.openIndex(corpus);
+			BooleanQuery[] parsed = new BooleanQuery[queries.length];
+			for (int query = 0; query < queries.length; query++)
+				parsed[query] = engine.buildQuery(queries[query], null, queries[query], null, null);
+			IndexSearcher shared = engine.acquire();
+			try {
+				Qrels qrels = Qrels.get(shared.getIndexReader());
+				FixedBitSet relevant = qrels.relevant(taskNumber);
+				int relevantCount = qrels.relevantCount(taskNumber);
+				List<Future<?>> points = new ArrayList<Future<?>>(grid.size());
+				for (Map.Entry<String, Similarity> point : grid.entrySet()) {
+					points.add(pool.submit(() -> {
+						IndexSearcher searcher = engine.searcher(shared.getIndexReader(), point.getValue());
+						for (int query = 0; query < parsed.length; query++)
+							table.evaluate(point.getKey(), queryIds[query], engine.rank(searcher, parsed[query]), relevant, relevantCount);
+						return null;
+					}));
+				}
+				for (Future<?> point : points)
+					get(point);
+			} finally {
+				engine.release(shared);
+			}
+		}
+		return table;
+	}
+
+	// the run with the highest mean of a measure, null for an empty grid
+	public static String best(EvaluationTable table, int column) {
+		String[] runs = table.getRuns();
+		if (runs.length == 0)
+			return null;
+		int best = 0;
+		for (int r = 1; r < runs.length; r++) {
+			if (table.mean(r, column) > table.mean(best, column))
+				best = r;
+		}
+		return runs[best];
+	}
+
+	private static void get(Future<?> future) throws IOException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	public void close() {
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Growable list of (recall, precision) pairs, one pair per rank of a result list
+ * Pairs are stored interleaved in a single double array.
+ */
+package ir_course;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PrecisionRecallList {
+
+	private double[] values;
+	private int size;
+
+	public PrecisionRecallList() {
+		this(16);
+	}
+
+	public PrecisionRecallList(int capacity) {
+		this.values = new double[2 * Math.max(capacity, 1)];
+		this.size = 0;
+	}
+
+	public void add(double recall, double precision) {
+		if (2 * size == values.length)
+			values = Arrays.copyOf(values, 2 * values.length);
+		values[2 * size] = recall;
+		values[2 * size + 1] = precision;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double recall(int rank) {
+		return values[2 * rank];
+	}
+
+	public double precision(int rank) {
+		return values[2 * rank + 1];
+	}
+
+	// the pairs as {recall, precision} arrays
+	public List<double[]> toList() {
+		List<double[]> list = new ArrayList<double[]>(size);
+		for (int i = 0; i < size; i++)
+			list.add(new double[] {recall(i), precision(i)});
+		return list;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Relevance judgments of an index, one bitset of relevant documents per search task
+ * Built once per reader from the "relevant" and "search_task_number" doc values
+ * and shared by every search on that reader.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+public class Qrels {
+
+	// one Qrels per reader generation, dropped together with the reader
+	private static final Map<IndexReader, Qrels> cache = new WeakHashMap<IndexReader, Qrels>();
+
+	private final int maxDoc;
+	private final Map<Integer, FixedBitSet> relevant = new HashMap<Integer, FixedBitSet>();
+	private final Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+
+	// returns the judgments of the reader, loading them on first use
+	public static Qrels get(IndexReader reader) throws IOException {
+		synchronized (cache) {
+			Qrels qrels = cache.get(reader);
+			if (qrels == null) {
+				qrels = new Qrels(reader);
+				cache.put(reader, qrels);
+			}
+			return qrels;
+		}
+	}
+
+	private Qrels(IndexReader reader) throws IOException {
+		this.maxDoc = reader.maxDoc();
+		for (LeafReaderContext context : reader.leaves()) {
+			LeafReader leaf = context.reader();
+			NumericDocValues relevance = DocValues.getNumeric(leaf, "relevant");
+			NumericDocValues taskNumbers = DocValues.getNumeric(leaf, "search_task_number");
+			Bits liveDocs = leaf.getLiveDocs();
+			for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+				if (relevance.get(doc) != 1 || (liveDocs != null && !liveDocs.get(doc)))
+					continue;
+				int task = (int) taskNumbers.get(doc);
+				FixedBitSet bits = relevant.get(task);
+				if (bits == null) {
+					bits = new FixedBitSet(maxDoc);
+					relevant.put(task, bits);
+				}
+				bits.set(context.docBase + doc);
+			}
+		}
+		for (Map.Entry<Integer, FixedBitSet> entry : relevant.entrySet())
+			counts.put(entry.getKey(), entry.getValue().cardinality());
+	}
+
+	// the relevant documents of the task, by top-level doc id
+	public FixedBitSet relevant(int task) {
+		FixedBitSet bits = relevant.get(task);
+		return bits != null ? bits : new FixedBitSet(maxDoc);
+	}
+
+	// number of relevant documents of the task
+	public int relevantCount(int task) {
+		Integer count = counts.get(task);
+		return count != null ? count : 0;
+	}
+
+	public boolean isRelevant(int task, int doc) {
+		FixedBitSet bits = relevant.get(task);
+		return bits != null && bits.get(doc);
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Result of one query of a batch with its evaluation and timing
+ */
+package ir_course;
+
+import java.util.List;
+
+public class QueryResult {
+
+	private final QuerySpec query;
+	private final PrecisionRecallList precisionRecall;
+	private final List<String> relevantTitles;
+	private final long nanos;
+
+	public QueryResult(QuerySpec query, PrecisionRecallList precisionRecall, List<String> relevantTitles, long nanos) {
+		this.query = query;
+		this.precisionRecall = precisionRecall;
+		this.relevantTitles = relevantTitles;
+		this.nanos = nanos;
+	}
+
+	public QuerySpec getQuery() {
+		return query;
+	}
+
+	// (recall, precision) at every rank of the result list
+	public PrecisionRecallList getPrecisionRecall() {
+		return precisionRecall;
+	}
+
+	// titles of the relevant documents retrieved, in rank order
+	public List<String> getRelevantTitles() {
+		return relevantTitles;
+	}
+
+	// time spent building, running and evaluating the query
+	public long getNanos() {
+		return nanos;
+	}
+
+	public double getMillis() {
+		return nanos / 1e6;
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Long-running query server on the JDK's built-in HTTP server
+ * The engine is opened once, so its analyzer, similarity, searcher and
+ * caches stay warm between requests, which run on a fixed pool of worker
+ * threads. POST /search takes a JSON object
+ *  {"title": "...", "abstract": "...", "notInTitle": [...],
+ *   "notInAbstract": [...], "k": 10}
+ * where "query" can stand for the same text in title and abstract, as the
+ * evaluation topics are searched, and returns
+ *  {"totalHits": n, "hits": [{"key": ..., "title": ..., "score": ...}], "tookMs": t}
+ * ranked by the engine's method on its search task. Bodies over
+ * MAX_BODY_BYTES are refused with 413, malformed or too deeply nested JSON
+ * with 400.
+ */
+package ir_course;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class QueryServer implements Closeable {
+
+	// hits returned when a request does not ask for a number
+	public static final int DEFAULT_HITS = 10;
+	// largest request body read, a query with its exclusions is far smaller
+	public static final int MAX_BODY_BYTES = 64 * 1024;
+
+	// a request or response body longer than the limit it was read with
+	static class BodyTooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		BodyTooLargeException(int limit) {
+			super("the body exceeds " + limit + " bytes");
+		}
+	}
+
+	private final static Logger LOGGER = Logger.getLogger(QueryServer.class.getName());
+
+	private final LuceneSearchApp engine;
+	private final HttpServer server;
+	private final ExecutorService workers;
+
+	// serves the open index of the engine on the address, requests run on the given number of threads
+	public QueryServer(LuceneSearchApp engine, InetSocketAddress address, int workers) throws IOException {
+		if (workers <= 0)
+			throw new IllegalArgumentException("workers must be positive: " + workers);
+		this.engine = engine;
+		this.server = HttpServer.create(address, 0);
+		this.workers = Executors.newFixedThreadPool(workers);
+		server.setExecutor(this.workers);
+		server.createContext("/search", this::handle);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	// the bound address, with the actual port when port 0 was asked for
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("POST")) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, error("only POST is supported"));
+				return;
+			}
+			Object parsed = Json.parse(new String(readAll(exchange.getRequestBody(), MAX_BODY_BYTES), StandardCharsets.UTF_8));
+			if (!(parsed instanceof Map))
+				throw new IllegalArgumentException("the request must be a JSON object");
+			@SuppressWarnings("unchecked")
+			Map<String, Object> request = (Map<String, Object>) parsed;
+			respond(exchange, 200, search(request));
+		} catch (IllegalArgumentException e) {
+			respond(exchange, 400, error(e.getMessage()));
+		} catch (BodyTooLargeException e) {
+			respond(exchange, 413, error(e.getMessage()));
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.WARNING, "search failed", e);
+			respond(exchange, 500, error(String.valueOf(e.getMessage())));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	// ranks the query of the request and renders the hits
+	String search(Map<String, Object> request) throws IOException {
+		long start = System.nanoTime();
+		String query = string(request, "query");
+		String inTitle = request.containsKey("title") ? string(request, "title") : query;
+		String inAbstract = request.containsKey("abstract") ? string(request, "abstract") : query;
+		if (inTitle == null && inAbstract == null)
+			throw new IllegalArgumentException("nothing to search, expected \"query\", \"title\" or \"abstract\"");
+		List<String> notInTitle = strings(request, "notInTitle");
+		List<String> notInAbstract = strings(request, "notInAbstract");
+		Object k = request.containsKey("k") ? request.get("k") : Double.valueOf(DEFAULT_HITS);
+		if (!(k instanceof Double) || (Double) k < 1 || (Double) k > engine.rankDepth || (Double) k % 1 != 0)
+			throw new IllegalArgumentException("\"k\" must be a whole number from 1 to " + engine.rankDepth);
+
+		BooleanQuery booleanQuery = engine.buildQuery(inTitle, notInTitle, inAbstract, notInAbstract, null);
+		IndexSearcher searcher = engine.acquire();
+		try {
+			IndexReader reader = searcher.getIndexReader();
+			RankedList hits = engine.rank(searcher, booleanQuery, ((Double) k).intValue());
+			BinaryDocValues ids = MultiDocValues.getBinaryValues(reader, "id");
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"totalHits\": ").append(hits.getTotalHits()).append(", \"hits\": [");
+			for (int i = 0; i < hits.size(); i++) {
+				int doc = hits.doc(i);
+				sb.append(i == 0 ? "" : ", ")
+					.append("{\"key\": ").append(Json.quote(ids.get(doc).utf8ToString()))
+					.append(", \"title\": ").append(Json.quote(engine.title(reader, doc)))
+					.append(", \"score\": ").append(hits.score(i)).append('}');
+			}
+			sb.append("], \"tookMs\": ").append(String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e6)).append('}');
+			return sb.toString();
+		} finally {
+			engine.release(searcher);
+		}
+	}
+
+	// a string member, null when it is missing
+	private static String string(Map<String, Object> request, String name) {
+		Object value = request.get(name);
+		if (value != null && !(value instanceof String))
+			throw new IllegalArgumentException("\"" + name + "\" must be a string");
+		return (String) value;
+	}
+
+	// a string array member, null when it is missing
+	private static List<String> strings(Map<String, Object> request, String name) {
+		Object value = request.get(name);
+		if (value == null)
+			return null;
+		if (!(value instanceof List))
+			throw new IllegalArgumentException("\"" + name + "\" must be an array of strings");
+		List<String> strings = new ArrayList<String>();
+		for (Object element : (List<?>) value) {
+			if (!(element instanceof String))
+				throw new IllegalArgumentException("\"" + name + "\" must be an array of strings");
+			strings.add((String) element);
+		}
+		return strings;
+	}
+
+	private static String error(String message) {
+		return "{\"error\": " + Json.quote(message) + "}";
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	// the whole stream, failing as soon as it is longer than limit bytes
+	static byte[] readAll(InputStream in, int limit) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			if ((long) bytes.size() + read > limit)
+				throw new BodyTooLargeException(limit);
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+
+	// stops accepting requests, waits a second for running ones and stops the workers;
+	// the engine is left open
+	public void close() {
+		server.stop(1);
+		workers.shutdown();
+		try {
+			workers.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
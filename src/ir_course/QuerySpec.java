@@ -0,0 +1,62 @@
+/*
+ * A query of a batch: free text searched in the title and abstract,
+ * plus terms that must not occur in them
+ */
+package ir_course;
+
+import java.util.List;
+
+public class QuerySpec {
+
+	// query id in the run file, null for the search task number
+	private final String id;
+	private final String inTitle;
+	private final List<String> notInTitle;
+	private final String inAbstract;
+	private final List<String> notInAbstract;
+
+	public QuerySpec(String inTitle, List<String> notInTitle, String inAbstract, List<String> notInAbstract) {
+		this(null, inTitle, notInTitle, inAbstract, notInAbstract);
+	}
+
+	public QuerySpec(String id, String inTitle, List<String> notInTitle, String inAbstract, List<String> notInAbstract) {
+		this.id = id;
+		this.inTitle = inTitle;
+		this.notInTitle = notInTitle;
+		this.inAbstract = inAbstract;
+		this.notInAbstract = notInAbstract;
+	}
+
+	// the same text searched in both title and abstract, as the evaluation topics are
+	public static QuerySpec of(String text) {
+		return new QuerySpec(text, null, text, null);
+	}
+
+	public static QuerySpec of(String id, String text) {
+		return new QuerySpec(id, text, null, text, null);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getInTitle() {
+		return inTitle;
+	}
+
+	public List<String> getNotInTitle() {
+		return notInTitle;
+	}
+
+	public String getInAbstract() {
+		return inAbstract;
+	}
+
+	public List<String> getNotInAbstract() {
+		return notInAbstract;
+	}
+
+	public String toString() {
+		return "in title: " + inTitle + "; not in title: " + notInTitle + "; in abstract: " + inAbstract + "; not in abstract: " + notInAbstract;
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Ranked result list of a query as parallel doc id and score arrays, best hit first
+ */
+package ir_course;
+
+public class RankedList {
+
+	private final int[] docIds;
+	private final float[] scores;
+	private final int size;
+	private final long totalHits;
+
+	public RankedList(int[] docIds, float[] scores, int size, long totalHits) {
+		this.docIds = docIds;
+		this.scores = scores;
+		this.size = size;
+		this.totalHits = totalHits;
+	}
+
+	// number of ranked hits, at most the rank depth
+	public int size() {
+		return size;
+	}
+
+	// number of documents that matched the query, including the ones beyond the rank depth
+	public long getTotalHits() {
+		return totalHits;
+	}
+
+	public int doc(int rank) {
+		return docIds[rank];
+	}
+
+	public float score(int rank) {
+		return scores[rank];
+	}
+
+	// backing arrays, only the first size() entries are valid
+	public int[] docIds() {
+		return docIds;
+	}
+
+	public float[] scores() {
+		return scores;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Collector that ranks the hits of a query up to a fixed rank depth
+ * Hits are kept in a primitive min-heap of at most depth entries, so memory
+ * does not grow with the number of matching documents. Ties are broken
+ * towards the lower doc id, the same way as TopScoreDocCollector.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SimpleCollector;
+
+public class RankedListCollector extends SimpleCollector {
+
+	private final int depth;
+	private int[] docIds;
+	private float[] scores;
+	private int size;
+	private long totalHits;
+
+	private Scorer scorer;
+	private int docBase;
+
+	public RankedListCollector(int depth) {
+		if (depth <= 0)
+			throw new IllegalArgumentException("rank depth must be positive: " + depth);
+		this.depth = depth;
+		this.docIds = new int[Math.min(depth, 64)];
+		this.scores = new float[this.docIds.length];
+	}
+
+	public boolean needsScores() {
+		return true;
+	}
+
+	protected void doSetNextReader(LeafReaderContext context) {
+		this.docBase = context.docBase;
+	}
+
+	public void setScorer(Scorer scorer) {
+		this.scorer = scorer;
+	}
+
+	public void collect(int doc) throws IOException {
+		totalHits++;
+		insert(docBase + doc, scorer.score());
+	}
+
+	// a manager that ranks every leaf slice separately and merges the slices,
+	// for segment-parallel search on an IndexSearcher with an executor
+	public static CollectorManager<RankedListCollector, RankedList> manager(int depth) {
+		return new CollectorManager<RankedListCollector, RankedList>() {
+			public RankedListCollector newCollector() {
+				return new RankedListCollector(depth);
+			}
+
+			public RankedList reduce(Collection<RankedListCollector> collectors) {
+				RankedListCollector merged = new RankedListCollector(depth);
+				for (RankedListCollector collector : collectors) {
+					for (int i = 0; i < collector.size; i++)
+						merged.insert(collector.docIds[i], collector.scores[i]);
+					merged.totalHits += collector.totalHits;
+				}
+				return merged.getRankedList();
+			}
+		};
+	}
+
+	// merges the ranked lists of separate indexes, the doc ids of the i-th list are shifted by docBases[i]
+	static RankedList merge(List<RankedList> lists, int[] docBases, int depth) {
+		RankedListCollector merged = new RankedListCollector(depth);
+		for (int i = 0; i < lists.size(); i++) {
+			RankedList list = lists.get(i);
+			for (int rank = 0; rank < list.size(); rank++)
+				merged.insert(docBases[i] + list.doc(rank), list.score(rank));
+			merged.totalHits += list.getTotalHits();
+		}
+		return merged.getRankedList();
+	}
+
+	private void insert(int doc, float score) {
+		if (size < depth) {
+			if (size == docIds.length) {
+				int capacity = (int) Math.min(depth, 2L * size);
+				docIds = Arrays.copyOf(docIds, capacity);
+				scores = Arrays.copyOf(scores, capacity);
+			}
+			docIds[size] = doc;
+			scores[size] = score;
+			upHeap(size++);
+		}
+		else if (score > scores[0] || (score == scores[0] && doc < docIds[0])) {
+			docIds[0] = doc;
+			scores[0] = score;
+			downHeap(0, size);
+		}
+	}
+
+	// the collected hits sorted best first, the collector must not be used afterwards
+	public RankedList getRankedList() {
+		for (int end = size - 1; end > 0; end--) {
+			swap(0, end);
+			downHeap(0, end);
+		}
+		return new RankedList(docIds, scores, size, totalHits);
+	}
+
+	// heap order: lower score first, on equal scores the higher doc id first
+	private boolean lessThan(int a, int b) {
+		return scores[a] < scores[b] || (scores[a] == scores[b] && docIds[a] > docIds[b]);
+	}
+
+	private void upHeap(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!lessThan(i, parent))
+				break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void downHeap(int i, int end) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= end)
+				break;
+			if (child + 1 < end && lessThan(child + 1, child))
+				child++;
+			if (!lessThan(child, i))
+				break;
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int doc = docIds[a];
+		docIds[a] = docIds[b];
+		docIds[b] = doc;
+		float score = scores[a];
+		scores[a] = scores[b];
+		scores[b] = score;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Size-bounded LRU cache of ranked result lists
+ * Keyed by the reader generation, the similarity, the rank depth and the
+ * normalized clauses of the query. Every reader a searcher is opened on
+ * gets a new generation number, so a changed index never hits the entries
+ * of an older reader; those are dropped as soon as the reader is replaced.
+ */
+package ir_course;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.similarities.Similarity;
+
+public class ResultCache {
+
+	// generation numbers of the readers seen so far, dropped together with the reader
+	private static final Map<IndexReader, Long> generations = new WeakHashMap<IndexReader, Long>();
+	private static final AtomicLong nextGeneration = new AtomicLong();
+
+	// estimated heap size of an entry besides its doc ids and scores
+	private static final long ENTRY_OVERHEAD = 256;
+
+	private final long maxBytes;
+	private final LinkedHashMap<String, RankedList> entries = new LinkedHashMap<String, RankedList>(16, 0.75f, true);
+	private long bytes = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	// keeps at most about maxBytes of ranked lists
+	public ResultCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	// the generation number of a reader, assigned on first use
+	public static long generation(IndexReader reader) {
+		synchronized (generations) {
+			Long generation = generations.get(reader);
+			if (generation == null) {
+				generation = nextGeneration.incrementAndGet();
+				generations.put(reader, generation);
+			}
+			return generation;
+		}
+	}
+
+	// the cache key of a query searched on a reader with a similarity and rank depth
+	public static String key(IndexReader reader, Similarity similarity, int rankDepth, BooleanQuery query) {
+		// the clause order does not change which documents match
+		List<String> clauses = new ArrayList<String>(query.clauses().size());
+		for (BooleanClause clause : query.clauses())
+			clauses.add(clause.getOccur() + " " + clause.getQuery());
+		Collections.sort(clauses);
+		StringBuilder sb = new StringBuilder();
+		sb.append(generation(reader)).append('\u0000').append(similarity).append('\u0000').append(rankDepth)
+			.append('\u0000').append(query.getMinimumNumberShouldMatch());
+		for (String clause : clauses)
+			sb.append('\u0000').append(clause);
+		return sb.toString();
+	}
+
+	// the cached ranked list, null on a miss
+	public RankedList get(String key) {
+		RankedList cached;
+		synchronized (entries) {
+			cached = entries.get(key);
+		}
+		(cached != null ? hits : misses).incrementAndGet();
+		return cached;
+	}
+
+	// caches a copy of the ranked list trimmed to its size, the number of entries evicted for it
+	public int put(String key, RankedList ranked) {
+		RankedList results = new RankedList(Arrays.copyOf(ranked.docIds(), ranked.size()),
+				Arrays.copyOf(ranked.scores(), ranked.size()), ranked.size(), ranked.getTotalHits());
+		synchronized (entries) {
+			RankedList previous = entries.put(key, results);
+			if (previous != null)
+				bytes -= sizeOf(key, previous);
+			bytes += sizeOf(key, results);
+			Iterator<Map.Entry<String, RankedList>> eldest = entries.entrySet().iterator();
+			int evicted = 0;
+			while (bytes > maxBytes && eldest.hasNext()) {
+				Map.Entry<String, RankedList> entry = eldest.next();
+				bytes -= sizeOf(entry.getKey(), entry.getValue());
+				eldest.remove();
+				evicted++;
+			}
+			evictions.addAndGet(evicted);
+			return evicted;
+		}
+	}
+
+	// drops the entries of a reader that is no longer searched
+	public void invalidate(IndexReader reader) {
+		String prefix = generation(reader) + "\u0000";
+		synchronized (entries) {
+			Iterator<Map.Entry<String, RankedList>> it = entries.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<String, RankedList> entry = it.next();
+				if (entry.getKey().startsWith(prefix)) {
+					bytes -= sizeOf(entry.getKey(), entry.getValue());
+					it.remove();
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			bytes = 0;
+		}
+	}
+
+	private static long sizeOf(String key, RankedList results) {
+		return ENTRY_OVERHEAD + 2L * key.length() + 8L * results.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getBytes() {
+		synchronized (entries) {
+			return bytes;
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * Asynchronous writer of ranked lists in TREC run format
+ *  qid Q0 docid rank score tag
+ * Searching threads only queue the ranked list of a query, a single
+ * background thread formats the lists and writes them in batches through
+ * a large buffer. A full queue blocks the searching threads until the
+ * writer has caught up, so memory stays bounded. close() takes the lock
+ * the producers share, so nothing is queued after the thread was told to
+ * stop.
+ */
+package ir_course;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class RunWriter implements Closeable {
+
+	// the ranked list of one query, or a flush request when flushed is set
+	private static class Entry {
+		final String queryId;
+		final String tag;
+		final String[] docIds;
+		final float[] scores;
+		final int size;
+		final CountDownLatch flushed;
+
+		Entry(String queryId, String tag, String[] docIds, float[] scores, int size, CountDownLatch flushed) {
+			this.queryId = queryId;
+			this.tag = tag;
+			this.docIds = docIds;
+			this.scores = scores;
+			this.size = size;
+			this.flushed = flushed;
+		}
+	}
+
+	// maximum number of ranked lists formatted per write
+	private static final int BATCH_SIZE = 64;
+	// the last entry taken by the writer thread
+	private static final Entry STOP = new Entry(null, null, null, null, 0, null);
+
+	private final Path file;
+	private final Writer out;
+	private final BlockingQueue<Entry> queue;
+	private final Thread thread;
+	// shared by write() and flush(), exclusive to close()
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile IOException failure;
+	private boolean closed;
+
+	public RunWriter(Path file) throws IOException {
+		this(file, 1024);
+	}
+
+	// capacity is the number of ranked lists that may wait for the writer thread
+	public RunWriter(Path file, int capacity) throws IOException {
+		this.file = file;
+		this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		this.queue = new ArrayBlockingQueue<Entry>(capacity);
+		this.thread = new Thread(this::drain, "run-writer " + file.getFileName());
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	// queues the first size documents of a ranked list, best first
+	public void write(String queryId, String tag, String[] docIds, float[] scores, int size) throws IOException {
+		lock.readLock().lock();
+		try {
+			checkOpen();
+			checkFailure();
+			put(new Entry(queryId, tag, docIds, scores, size, null));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// blocks until everything queued so far is written to the file
+	public void flush() throws IOException {
+		CountDownLatch flushed = new CountDownLatch(1);
+		lock.readLock().lock();
+		try {
+			checkOpen();
+			checkFailure();
+			put(new Entry(null, null, null, null, 0, flushed));
+		} finally {
+			lock.readLock().unlock();
+		}
+		try {
+			flushed.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		checkFailure();
+	}
+
+	// writes the remaining ranked lists and closes the file
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+			// the thread writes out what is queued before STOP and ends, an
+			// interrupted close still waits for it so the file is not closed under it
+			boolean interrupted = false;
+			while (true) {
+				try {
+					queue.put(STOP);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			out.close();
+			checkFailure();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void put(Entry entry) throws IOException {
+		try {
+			queue.put(entry);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	// nothing is taken off the queue once the writer thread has stopped
+	private void checkOpen() throws IOException {
+		if (closed)
+			throw new IOException("run writer of " + file + " is closed");
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null)
+			throw new IOException("writing " + file + " failed", failure);
+	}
+
+	// writer thread: takes whatever is queued and writes it in one go
+	private void drain() {
+		List<Entry> batch = new ArrayList<Entry>(BATCH_SIZE);
+		StringBuilder line = new StringBuilder(128);
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				// only close() stops the writer
+				continue;
+			}
+			queue.drainTo(batch, BATCH_SIZE - 1);
+			for (Entry entry : batch) {
+				try {
+					if (failure == null)
+						write(entry, line);
+				} catch (IOException e) {
+					// keep draining so producers never block on a dead writer
+					failure = e;
+				}
+				if (entry.flushed != null)
+					entry.flushed.countDown();
+				if (entry == STOP)
+					return;
+			}
+			batch.clear();
+		}
+	}
+
+	private void write(Entry entry, StringBuilder line) throws IOException {
+		if (entry.flushed != null || entry == STOP) {
+			out.flush();
+			return;
+		}
+		for (int i = 0; i < entry.size; i++) {
+			line.setLength(0);
+			line.append(entry.queryId).append(" Q0 ").append(entry.docIds[i]).append(' ')
+				.append(i + 1).append(' ').append(entry.scores[i]).append(' ').append(entry.tag).append('\n');
+			out.append(line);
+		}
+	}
+}
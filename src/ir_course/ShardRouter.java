@@ -0,0 +1,56 @@
+/*
+ * Decides which shard of a sharded index a document is written to
+ *  HASH  spreads the documents evenly by a hash of their key
+ *  TASK  keeps the documents of a search task together, a task-filtered
+ *        query then only finds hits on one shard
+ * A router must only look at the document, so a document goes to the same
+ * shard on every build; its name is part of the catalog layout.
+ */
+package ir_course;
+
+import java.util.Locale;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+public interface ShardRouter {
+
+	// the shard of the document, in 0..shards-1
+	int shard(DocumentInCollection doc, int shards);
+
+	// identifies the routing in catalog layouts
+	String getName();
+
+	ShardRouter HASH = new ShardRouter() {
+		public int shard(DocumentInCollection doc, int shards) {
+			// murmur3 instead of String.hashCode, whose low bits are poorly spread
+			return Math.floorMod(StringHelper.murmurhash3_x86_32(new BytesRef(doc.getKey()), 0), shards);
+		}
+
+		public String getName() {
+			return "hash";
+		}
+	};
+
+	ShardRouter TASK = new ShardRouter() {
+		public int shard(DocumentInCollection doc, int shards) {
+			return Math.floorMod(doc.getSearchTaskNumber(), shards);
+		}
+
+		public String getName() {
+			return "task";
+		}
+	};
+
+	// parses a command line value such as "hash"
+	static ShardRouter parse(String name) {
+		switch (name.toLowerCase(Locale.ROOT)) {
+		case "hash":
+			return HASH;
+		case "task":
+			return TASK;
+		default:
+			throw new IllegalArgumentException("unknown shard router: " + name);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Searches the shards of a sharded index as one index
+ * Every shard is a separate index with a searcher of its own; a query is
+ * fanned out to all shards on an executor and their ranked lists are
+ * merged into the global top k. The shard searchers score with term and
+ * collection statistics summed over all shards, so a hit scores exactly as
+ * in a single index of every document. Hits are numbered like the documents
+ * of getReader(), the shards one after the other, which is where Qrels, doc
+ * values and stored fields of hits are read from.
+ */
+package ir_course;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCache;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+
+public class ShardedIndex implements Closeable {
+
+	// searches one shard with the statistics of all of them, the term statistics
+	// are shared by the shard searchers of one query
+	private class ShardSearcher extends IndexSearcher {
+		private final Map<Term, TermStatistics> termStatistics;
+
+		ShardSearcher(IndexReader shard, Map<Term, TermStatistics> termStatistics) {
+			super(shard);
+			this.termStatistics = termStatistics;
+		}
+
+		public TermStatistics termStatistics(Term term, TermContext context) throws IOException {
+			TermStatistics statistics = termStatistics.get(term);
+			if (statistics == null) {
+				statistics = ShardedIndex.this.termStatistics(term);
+				termStatistics.put(term, statistics);
+			}
+			return statistics;
+		}
+
+		public CollectionStatistics collectionStatistics(String field) throws IOException {
+			return ShardedIndex.this.collectionStatistics(field);
+		}
+	}
+
+	private final List<Directory> directories;
+	private final List<DirectoryReader> shards;
+	private final int[] docBases;
+	private final MultiReader reader;
+	private final ExecutorService executor;
+	private QueryCache queryCache = IndexSearcher.getDefaultQueryCache();
+	private QueryCachingPolicy queryCachingPolicy = IndexSearcher.getDefaultQueryCachingPolicy();
+	// the shards do not change once opened, so neither do the summed statistics of
+	// their few fields
+	private final Map<String, CollectionStatistics> collectionStatistics = new ConcurrentHashMap<String, CollectionStatistics>();
+
+	private ShardedIndex(List<Directory> directories, List<DirectoryReader> shards, ExecutorService executor) throws IOException {
+		this.directories = directories;
+		this.shards = shards;
+		this.executor = executor;
+		this.docBases = new int[shards.size()];
+		for (int s = 1; s < shards.size(); s++)
+			docBases[s] = docBases[s - 1] + shards.get(s - 1).maxDoc();
+		this.reader = new MultiReader(shards.toArray(new IndexReader[shards.size()]));
+		// searches still running on the reader keep the directories open
+		reader.addReaderClosedListener(closed -> IOUtils.close(directories));
+	}
+
+	// opens the shard indexes in the given order, queries are fanned out on the executor
+	public static ShardedIndex open(List<Path> shards, DirectoryType type, ExecutorService executor) throws IOException {
+		List<Directory> directories = new ArrayList<Directory>(shards.size());
+		List<DirectoryReader> readers = new ArrayList<DirectoryReader>(shards.size());
+		boolean success = false;
+		try {
+			for (Path shard : shards) {
+				directories.add(type.open(shard));
+				readers.add(DirectoryReader.open(directories.get(directories.size() - 1)));
+			}
+			ShardedIndex index = new ShardedIndex(directories, readers, executor);
+			success = true;
+			return index;
+		} finally {
+			if (!success) {
+				IOUtils.closeWhileHandlingException(readers);
+				IOUtils.closeWhileHandlingException(directories);
+			}
+		}
+	}
+
+	// all shards as one reader, hit doc ids refer to it
+	public IndexReader getReader() {
+		return reader;
+	}
+
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	// the query cache of the shard searchers
+	public void setQueryCache(QueryCache queryCache, QueryCachingPolicy queryCachingPolicy) {
+		this.queryCache = queryCache;
+		this.queryCachingPolicy = queryCachingPolicy;
+	}
+
+	// the depth best hits of the query over all shards
+	public RankedList search(Query query, int depth, Similarity similarity) throws IOException {
+		// summed once per query term rather than kept for every term ever searched
+		Map<Term, TermStatistics> termStatistics = new ConcurrentHashMap<Term, TermStatistics>();
+		List<Future<RankedList>> futures = new ArrayList<Future<RankedList>>(shards.size());
+		for (DirectoryReader shard : shards) {
+			futures.add(executor.submit(() -> {
+				IndexSearcher searcher = new ShardSearcher(shard, termStatistics);
+				searcher.setSimilarity(similarity);
+				searcher.setQueryCache(queryCache);
+				searcher.setQueryCachingPolicy(queryCachingPolicy);
+				RankedListCollector collector = new RankedListCollector(depth);
+				searcher.search(query, collector);
+				return collector.getRankedList();
+			}));
+		}
+		List<RankedList> ranked = new ArrayList<RankedList>(shards.size());
+		for (Future<RankedList> future : futures)
+			ranked.add(get(future));
+		return RankedListCollector.merge(ranked, docBases, depth);
+	}
+
+	// document and term frequency of the term over all shards, like a single index
+	// counts deleted documents until their segments are merged
+	TermStatistics termStatistics(Term term) throws IOException {
+		long docFreq = 0;
+		long totalTermFreq = 0;
+		for (DirectoryReader shard : shards) {
+			docFreq += shard.docFreq(term);
+			totalTermFreq = sum(totalTermFreq, shard.totalTermFreq(term));
+		}
+		return new TermStatistics(term.bytes(), docFreq, totalTermFreq);
+	}
+
+	// the statistics of the field over all shards, computed the way IndexSearcher does for one
+	CollectionStatistics collectionStatistics(String field) throws IOException {
+		CollectionStatistics statistics = collectionStatistics.get(field);
+		if (statistics == null) {
+			long maxDoc = 0;
+			long docCount = 0;
+			long sumTotalTermFreq = 0;
+			long sumDocFreq = 0;
+			for (DirectoryReader shard : shards) {
+				Terms terms = MultiFields.getTerms(shard, field);
+				maxDoc += shard.maxDoc();
+				if (terms != null) {
+					docCount = sum(docCount, terms.getDocCount());
+					sumTotalTermFreq = sum(sumTotalTermFreq, terms.getSumTotalTermFreq());
+					sumDocFreq = sum(sumDocFreq, terms.getSumDocFreq());
+				}
+			}
+			statistics = new CollectionStatistics(field, maxDoc, docCount, sumTotalTermFreq, sumDocFreq);
+			collectionStatistics.put(field, statistics);
+		}
+		return statistics;
+	}
+
+	// -1 marks a statistic the index does not keep, then the sum is unknown too
+	private static long sum(long a, long b) {
+		return a == -1 || b == -1 ? -1 : a + b;
+	}
+
+	private static RankedList get(Future<RankedList> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	// the shards are closed once the searches still running on them are done
+	public void close() throws IOException {
+		reader.close();
+	}
+}
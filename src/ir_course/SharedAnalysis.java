@@ -0,0 +1,308 @@
+/*
+ * Tokenizes documents once for several analysis chains
+ * The standard tokenizer and lower-casing, the prefix every chain of the
+ * AnalysisRegistry shares, run once per text field into a TokenBuffer.
+ * When a chain stems, possessive removal and Porter stemming run once more
+ * over the buffered tokens, which keeps every token's stripped and stemmed
+ * form next to it. Each chain then only replays the buffer, dropping its
+ * stopwords and emitting the form it indexes, so indexing a batch into n
+ * indexes tokenizes and stems it once instead of n times. One instance is
+ * meant to be used by a single indexing thread, like IndexedDocument.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.en.EnglishPossessiveFilter;
+import org.apache.lucene.analysis.en.PorterStemFilter;
+import org.apache.lucene.analysis.standard.StandardFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.document.Document;
+
+public class SharedAnalysis {
+
+	// text fields of IndexedDocument, in the order their buffers are kept
+	private static final int TITLE = 0, ABSTRACT = 1, QUERY = 2, FIELDS = 3;
+
+	// one form of every token of a field value, packed into a single char array
+	static class Terms {
+		char[] chars = new char[256];
+		int[] starts = new int[32];
+		int[] lengths = new int[32];
+		int size;
+		int charsUsed;
+
+		void clear() {
+			size = 0;
+			charsUsed = 0;
+		}
+
+		void add(CharTermAttribute term) {
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				lengths = Arrays.copyOf(lengths, size * 2);
+			}
+			if (charsUsed + term.length() > chars.length)
+				chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charsUsed + term.length()));
+			System.arraycopy(term.buffer(), 0, chars, charsUsed, term.length());
+			starts[size] = charsUsed;
+			lengths[size] = term.length();
+			charsUsed += term.length();
+			size++;
+		}
+	}
+
+	// the tokens of one field value: lower-cased, without possessive and stemmed
+	static class TokenBuffer {
+		final Terms lowerCased = new Terms();
+		final Terms possessive = new Terms();
+		final Terms stemmed = new Terms();
+		int[] positionIncrements = new int[32];
+		int[] startOffsets = new int[32];
+		int[] endOffsets = new int[32];
+		int size;
+		int finalOffset;
+		int finalPositionIncrement;
+
+		void clear() {
+			lowerCased.clear();
+			possessive.clear();
+			stemmed.clear();
+			size = 0;
+			finalOffset = 0;
+			finalPositionIncrement = 0;
+		}
+
+		void add(CharTermAttribute term, int positionIncrement, int startOffset, int endOffset) {
+			if (size == positionIncrements.length) {
+				positionIncrements = Arrays.copyOf(positionIncrements, size * 2);
+				startOffsets = Arrays.copyOf(startOffsets, size * 2);
+				endOffsets = Arrays.copyOf(endOffsets, size * 2);
+			}
+			lowerCased.add(term);
+			positionIncrements[size] = positionIncrement;
+			startOffsets[size] = startOffset;
+			endOffsets[size] = endOffset;
+			size++;
+		}
+	}
+
+	// replays the lower-cased tokens of a buffer, for the stemming pass
+	static final class Replay extends TokenStream {
+		private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+		private TokenBuffer buffer;
+		private int next;
+
+		void setBuffer(TokenBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public boolean incrementToken() {
+			if (next == buffer.size)
+				return false;
+			clearAttributes();
+			term.copyBuffer(buffer.lowerCased.chars, buffer.lowerCased.starts[next], buffer.lowerCased.lengths[next]);
+			next++;
+			return true;
+		}
+
+		public void reset() throws IOException {
+			super.reset();
+			next = 0;
+		}
+	}
+
+	// records the terms passing through into a Terms
+	static final class Tap extends TokenFilter {
+		private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+		private Terms terms;
+
+		Tap(TokenStream input) {
+			super(input);
+		}
+
+		void setTerms(Terms terms) {
+			this.terms = terms;
+		}
+
+		public boolean incrementToken() throws IOException {
+			if (!input.incrementToken())
+				return false;
+			terms.add(term);
+			return true;
+		}
+	}
+
+	// the tokens of a buffer as analyzed by one chain, it can be reset and consumed again
+	// like a reused analyzer chain; stopwords are dropped the way StopFilter does, their
+	// positions are added to the next token or, for trailing ones, to the end
+	static final class ChainReplay extends TokenStream {
+		private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+		private final PositionIncrementAttribute positionIncrement = addAttribute(PositionIncrementAttribute.class);
+		private final OffsetAttribute offset = addAttribute(OffsetAttribute.class);
+		private final CharArraySet stopwords;
+		private final boolean stemmer;
+		private TokenBuffer buffer;
+		private int next;
+		private int skippedPositions;
+
+		ChainReplay(AnalysisRegistry.Chain chain) {
+			this.stopwords = chain.getStopwords();
+			this.stemmer = chain.hasStemmer();
+		}
+
+		void setBuffer(TokenBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public boolean incrementToken() {
+			skippedPositions = 0;
+			// stemming chains drop stopwords after possessive removal, as EnglishAnalyzer does
+			Terms checked = stemmer ? buffer.possessive : buffer.lowerCased;
+			Terms emitted = stemmer ? buffer.stemmed : buffer.lowerCased;
+			for (; next < buffer.size; next++) {
+				if (stopwords.contains(checked.chars, checked.starts[next], checked.lengths[next])) {
+					skippedPositions += buffer.positionIncrements[next];
+					continue;
+				}
+				clearAttributes();
+				term.copyBuffer(emitted.chars, emitted.starts[next], emitted.lengths[next]);
+				positionIncrement.setPositionIncrement(buffer.positionIncrements[next] + skippedPositions);
+				offset.setOffset(buffer.startOffsets[next], buffer.endOffsets[next]);
+				next++;
+				return true;
+			}
+			return false;
+		}
+
+		public void end() throws IOException {
+			super.end();
+			offset.setOffset(buffer.finalOffset, buffer.finalOffset);
+			positionIncrement.setPositionIncrement(buffer.finalPositionIncrement + skippedPositions);
+		}
+
+		public void reset() throws IOException {
+			super.reset();
+			next = 0;
+			skippedPositions = 0;
+		}
+	}
+
+	private final List<AnalysisRegistry.Chain> chains;
+	private final boolean stemming;
+	// the shared prefix of every chain
+	private final StandardTokenizer tokenizer = new StandardTokenizer();
+	private final TokenStream lowerCased = new LowerCaseFilter(new StandardFilter(tokenizer));
+	private final CharTermAttribute term = lowerCased.addAttribute(CharTermAttribute.class);
+	private final PositionIncrementAttribute positionIncrement = lowerCased.addAttribute(PositionIncrementAttribute.class);
+	private final OffsetAttribute offset = lowerCased.addAttribute(OffsetAttribute.class);
+	// possessive removal and stemming of the buffered tokens, both keep every token
+	private final Replay stemInput = new Replay();
+	private final Tap possessiveTap = new Tap(new EnglishPossessiveFilter(stemInput));
+	private final Tap stemTap = new Tap(new PorterStemFilter(possessiveTap));
+	// per chain and field, the stream indexed into the field
+	private final ChainReplay[][] replays;
+	private final IndexedDocument[] fields;
+	// per document of the current batch and field
+	private final List<TokenBuffer[]> buffers = new ArrayList<TokenBuffer[]>();
+	private List<DocumentInCollection> batch = null;
+
+	public SharedAnalysis(List<AnalysisRegistry.Chain> chains) {
+		this(chains, IndexingOptions.Profile.FULL);
+	}
+
+	public SharedAnalysis(List<AnalysisRegistry.Chain> chains, IndexingOptions.Profile profile) {
+		this.chains = new ArrayList<AnalysisRegistry.Chain>(chains);
+		this.replays = new ChainReplay[chains.size()][FIELDS];
+		this.fields = new IndexedDocument[chains.size()];
+		boolean stemming = false;
+		for (int c = 0; c < chains.size(); c++) {
+			for (int f = 0; f < FIELDS; f++)
+				replays[c][f] = new ChainReplay(chains.get(c));
+			fields[c] = new IndexedDocument(profile);
+			stemming |= chains.get(c).hasStemmer();
+		}
+		this.stemming = stemming;
+	}
+
+	public List<AnalysisRegistry.Chain> getChains() {
+		return new ArrayList<AnalysisRegistry.Chain>(chains);
+	}
+
+	// tokenizes the text fields of the batch, the buffers are reused by the next batch
+	public void tokenize(List<DocumentInCollection> batch) throws IOException {
+		while (buffers.size() < batch.size())
+			buffers.add(new TokenBuffer[] {new TokenBuffer(), new TokenBuffer(), new TokenBuffer()});
+		for (int i = 0; i < batch.size(); i++) {
+			DocumentInCollection doc = batch.get(i);
+			TokenBuffer[] buffer = buffers.get(i);
+			tokenize(doc.getTitle(), buffer[TITLE]);
+			tokenize(doc.getAbstractText(), buffer[ABSTRACT]);
+			tokenize(doc.getQuery(), buffer[QUERY]);
+		}
+		this.batch = batch;
+	}
+
+	// the tokenized batch as Lucene documents of the chain-th chain, each one is
+	// filled only when the writer asks for it
+	public Iterable<Document> documents(int chain) {
+		List<DocumentInCollection> batch = this.batch;
+		return () -> new Iterator<Document>() {
+			private int i = 0;
+
+			public boolean hasNext() {
+				return i < batch.size();
+			}
+
+			public Document next() {
+				TokenBuffer[] buffer = buffers.get(i);
+				for (int f = 0; f < FIELDS; f++)
+					replays[chain][f].setBuffer(buffer[f]);
+				return fields[chain].set(batch.get(i++), replays[chain][TITLE], replays[chain][ABSTRACT], replays[chain][QUERY]);
+			}
+		};
+	}
+
+	// the tokens of the text, and their stemmed forms if a chain needs them
+	void tokenize(String text, TokenBuffer buffer) throws IOException {
+		buffer.clear();
+		if (text == null)
+			return;
+		tokenizer.setReader(new StringReader(text));
+		lowerCased.reset();
+		try {
+			while (lowerCased.incrementToken())
+				buffer.add(term, positionIncrement.getPositionIncrement(), offset.startOffset(), offset.endOffset());
+			lowerCased.end();
+			buffer.finalOffset = offset.endOffset();
+			buffer.finalPositionIncrement = positionIncrement.getPositionIncrement();
+		} finally {
+			lowerCased.close();
+		}
+		if (!stemming)
+			return;
+		stemInput.setBuffer(buffer);
+		possessiveTap.setTerms(buffer.possessive);
+		stemTap.setTerms(buffer.stemmed);
+		stemTap.reset();
+		try {
+			while (stemTap.incrementToken())
+				;
+			stemTap.end();
+		} finally {
+			stemTap.close();
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Paired significance tests between every pair of runs of an EvaluationTable
+ * For the per-query values of a measure (AP, P@k, ...) of two runs, both
+ *  the paired randomization test: the sign of every per-query difference
+ *  is flipped at random, and
+ *  the paired bootstrap test: queries are resampled with replacement and
+ *  the mean difference is shifted to zero under the null hypothesis
+ * give a two-sided p-value. Only the queries evaluated in both runs are
+ * paired, and the means of a result are taken over those. The resamples
+ * are cut into fixed-size chunks, each with its own SplittableRandom split
+ * off a seeded root in a fixed order, so the p-values depend on the seed
+ * only, not on the thread count.
+ */
+package ir_course;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SignificanceTest {
+
+	// resamples drawn by one task from one random stream
+	private static final int CHUNK = 4096;
+
+	// outcome of the tests between two runs
+	public static class Result {
+		private final String runA;
+		private final String runB;
+		private final double meanA;
+		private final double meanB;
+		private final int queries;
+		private final double randomizationP;
+		private final double bootstrapP;
+
+		Result(String runA, String runB, double meanA, double meanB, int queries, double randomizationP, double bootstrapP) {
+			this.runA = runA;
+			this.runB = runB;
+			this.meanA = meanA;
+			this.meanB = meanB;
+			this.queries = queries;
+			this.randomizationP = randomizationP;
+			this.bootstrapP = bootstrapP;
+		}
+
+		public String getRunA() {
+			return runA;
+		}
+
+		public String getRunB() {
+			return runB;
+		}
+
+		public double getMeanA() {
+			return meanA;
+		}
+
+		public double getMeanB() {
+			return meanB;
+		}
+
+		// the number of paired queries
+		public int getQueries() {
+			return queries;
+		}
+
+		public double getRandomizationP() {
+			return randomizationP;
+		}
+
+		public double getBootstrapP() {
+			return bootstrapP;
+		}
+
+		public String toString() {
+			return String.format(Locale.ROOT, "%s vs %s: %.4f vs %.4f over %d queries, randomization p=%.4f, bootstrap p=%.4f",
+					runA, runB, meanA, meanB, queries, randomizationP, bootstrapP);
+		}
+	}
+
+	private final int samples;
+	private final long seed;
+	private final int threads;
+
+	public SignificanceTest() {
+		this(100000, 42, Runtime.getRuntime().availableProcessors());
+	}
+
+	// samples resamples per test and pair of runs, drawn on the given number of threads
+	public SignificanceTest(int samples, long seed, int threads) {
+		if (samples <= 0 || threads <= 0)
+			throw new IllegalArgumentException("samples and threads must be positive: " + samples + ", " + threads);
+		this.samples = samples;
+		this.seed = seed;
+		this.threads = threads;
+	}
+
+	// tests every pair of runs of the table on the given Evaluator column
+	public List<Result> compareAll(EvaluationTable table, int column) throws IOException {
+		String[] runs = table.getRuns();
+		List<int[]> pairs = new ArrayList<int[]>();
+		for (int a = 0; a < runs.length; a++) {
+			for (int b = a + 1; b < runs.length; b++)
+				pairs.add(new int[] {a, b});
+		}
+
+		// the streams are split off the root in submission order, which makes them
+		// independent of how the chunks are scheduled
+		SplittableRandom root = new SplittableRandom(seed);
+		int chunks = (samples + CHUNK - 1) / CHUNK;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<long[]>> counts = new ArrayList<Future<long[]>>();
+			// per pair, the values of run a and run b on the queries evaluated in both
+			List<double[][]> paired = new ArrayList<double[][]>(pairs.size());
+			for (int[] pair : pairs) {
+				double[][] values = paired(table, pair[0], pair[1], column);
+				paired.add(values);
+				double[] differences = differences(values[0], values[1]);
+				for (int c = 0; c < chunks; c++) {
+					int n = Math.min(CHUNK, samples - c * CHUNK);
+					SplittableRandom randomization = root.split();
+					SplittableRandom bootstrap = root.split();
+					counts.add(pool.submit(() -> new long[] {
+						randomization(differences, n, randomization),
+						bootstrap(differences, n, bootstrap)
+					}));
+				}
+			}
+			List<Result> results = new ArrayList<Result>(pairs.size());
+			for (int p = 0; p < pairs.size(); p++) {
+				long randomization = 0;
+				long bootstrap = 0;
+				for (int c = 0; c < chunks; c++) {
+					long[] count = get(counts.get(p * chunks + c));
+					randomization += count[0];
+					bootstrap += count[1];
+				}
+				double[][] values = paired.get(p);
+				results.add(new Result(runs[pairs.get(p)[0]], runs[pairs.get(p)[1]], mean(values[0]), mean(values[1]), values[0].length,
+						(randomization + 1.) / (samples + 1.), (bootstrap + 1.) / (samples + 1.)));
+			}
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	// one line per pair of runs
+	public static void print(List<Result> results, String measure, PrintStream out) {
+		out.println(String.format(Locale.ROOT, "%-10s %-10s %8s %8s %8s %7s %14s %10s", "run a", "run b", measure + " a", measure + " b", "diff", "queries", "randomization", "bootstrap"));
+		for (Result result : results) {
+			out.println(String.format(Locale.ROOT, "%-10s %-10s %8.4f %8.4f %+8.4f %7d %14.4f %10.4f",
+					result.getRunA(), result.getRunB(), result.getMeanA(), result.getMeanB(),
+					result.getMeanA() - result.getMeanB(), result.getQueries(), result.getRandomizationP(), result.getBootstrapP()));
+		}
+	}
+
+	// resamples whose randomly signed mean difference is at least as extreme as the observed one
+	static long randomization(double[] differences, int samples, SplittableRandom random) {
+		int n = differences.length;
+		long[] raw = new long[n];
+		for (int q = 0; q < n; q++)
+			raw[q] = Double.doubleToRawLongBits(differences[q]);
+		// compared as sums, the common factor 1/n does not change the outcome
+		double observed = Math.abs(sum(differences)) - 1e-12;
+		long extreme = 0;
+		for (int s = 0; s < samples; s++) {
+			double sum = 0;
+			long bits = 0;
+			for (int q = 0; q < n; q++) {
+				if ((q & 63) == 0)
+					bits = random.nextLong();
+				// a random bit moved into the sign bit flips the sign without a branch
+				sum += Double.longBitsToDouble(raw[q] ^ (bits << 63));
+				bits >>>= 1;
+			}
+			if (Math.abs(sum) >= observed)
+				extreme++;
+		}
+		return extreme;
+	}
+
+	// resamples whose mean difference, shifted by the observed mean, is at least as extreme as it
+	static long bootstrap(double[] differences, int samples, SplittableRandom random) {
+		int n = differences.length;
+		double observed = sum(differences);
+		double threshold = Math.abs(observed) - 1e-12;
+		long extreme = 0;
+		for (int s = 0; s < samples; s++) {
+			double sum = 0;
+			for (int q = 0; q < n; q++)
+				sum += differences[random.nextInt(n)];
+			if (Math.abs(sum - observed) >= threshold)
+				extreme++;
+		}
+		return extreme;
+	}
+
+	// the values of two runs on the queries both have been evaluated on, in query order;
+	// a query missing from one run would otherwise count as a 0 in it
+	private static double[][] paired(EvaluationTable table, int a, int b, int column) {
+		int queries = table.getQueries().length;
+		double[] valuesA = new double[queries];
+		double[] valuesB = new double[queries];
+		int n = 0;
+		for (int q = 0; q < queries; q++) {
+			if (table.isEvaluated(a, q) && table.isEvaluated(b, q)) {
+				valuesA[n] = table.get(a, q, column);
+				valuesB[n] = table.get(b, q, column);
+				n++;
+			}
+		}
+		return new double[][] {Arrays.copyOf(valuesA, n), Arrays.copyOf(valuesB, n)};
+	}
+
+	private static double[] differences(double[] a, double[] b) {
+		double[] differences = new double[a.length];
+		for (int q = 0; q < a.length; q++)
+			differences[q] = a[q] - b[q];
+		return differences;
+	}
+
+	private static double sum(double[] values) {
+		double sum = 0;
+		for (double value : values)
+			sum += value;
+		return sum;
+	}
+
+	private static double mean(double[] values) {
+		return values.length == 0 ? 0 : sum(values) / values.length;
+	}
+
+	private static long[] get(Future<long[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * A CorpusSnapshot gives back the documents of the collection it was written from
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CorpusSnapshotTest {
+
+	private static final String CORPUS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<results>\n"
+			+ "  <item>\n"
+			+ "    <title>Email Spam Filtering: A Systematic Review</title>\n"
+			+ "    <abstract>Spam is information crafted to be delivered &amp; \"filtered\".</abstract>\n"
+			+ "    <search_task_number>2</search_task_number>\n"
+			+ "    <query>spam filtering</query>\n"
+			+ "    <relevance>1</relevance>\n"
+			+ "  </item>\n"
+			+ "  <item>\n"
+			+ "    <title>Café recommender systems, 推荐系统</title>\n"
+			+ "    <search_task_number>5</search_task_number>\n"
+			+ "    <relevance>0</relevance>\n"
+			+ "  </item>\n"
+			+ "  <item>\n"
+			+ "    <title>Email Spam Filtering: A Systematic Review</title>\n"
+			+ "    <abstract>The same title again.</abstract>\n"
+			+ "    <search_task_number>2</search_task_number>\n"
+			+ "    <query>spam filtering</query>\n"
+			+ "    <relevance>0</relevance>\n"
+			+ "  </item>\n"
+			+ "</results>\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path source;
+	private Path snapshotFile;
+
+	@Before
+	public void setUp() throws IOException {
+		source = folder.getRoot().toPath().resolve("corpus.xml");
+		Files.write(source, CORPUS.getBytes(StandardCharsets.UTF_8));
+		snapshotFile = CorpusSnapshot.pathFor(source);
+	}
+
+	private List<DocumentInCollection> parsed() throws IOException {
+		List<DocumentInCollection> docs = new ArrayList<DocumentInCollection>();
+		try (DocumentCollectionReader reader = new DocumentCollectionReader(source.toString())) {
+			while (reader.hasNext())
+				docs.add(reader.next());
+		}
+		return docs;
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		assertFalse(CorpusSnapshot.isUpToDate(source, snapshotFile));
+		CorpusSnapshot snapshot = CorpusSnapshot.open(source, snapshotFile);
+		assertTrue(CorpusSnapshot.isUpToDate(source, snapshotFile));
+		assertTrue(snapshot.isUpToDate(source));
+
+		List<DocumentInCollection> expected = parsed();
+		assertEquals(3, expected.size());
+		assertEquals(expected.size(), snapshot.size());
+		for (int i = 0; i < expected.size(); i++) {
+			DocumentInCollection want = expected.get(i);
+			DocumentInCollection got = snapshot.get(i);
+			assertEquals(want.getKey(), got.getKey());
+			assertEquals(want.getTitle(), got.getTitle());
+			assertEquals(want.getAbstractText(), got.getAbstractText());
+			assertEquals(want.getSearchTaskNumber(), got.getSearchTaskNumber());
+			assertEquals(want.getQuery(), got.getQuery());
+			assertEquals(want.isRelevant(), got.isRelevant());
+			assertEquals(want.getContentHash(), got.getContentHash());
+			assertEquals(want.getKey(), snapshot.getKey(i));
+			assertEquals(want.getTitle(), snapshot.getTitle(i));
+		}
+		assertNull(snapshot.get(1).getAbstractText());
+		assertNull(snapshot.get(1).getQuery());
+		// a repeated title of a task gets a key of its own
+		assertFalse(snapshot.getKey(0).equals(snapshot.getKey(2)));
+	}
+
+	@Test
+	public void mappedAgainFromTheFile() throws IOException {
+		CorpusSnapshot.write(source, snapshotFile);
+		CorpusSnapshot snapshot = CorpusSnapshot.map(snapshotFile);
+		assertEquals(3, snapshot.size());
+		assertEquals("Café recommender systems, 推荐系统", snapshot.getTitle(1));
+	}
+
+	@Test
+	public void staleOnceTheSourceChanges() throws IOException {
+		CorpusSnapshot snapshot = CorpusSnapshot.open(source, snapshotFile);
+		Files.write(source, CORPUS.replace("<relevance>0</relevance>", "<relevance>1</relevance>").getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() + 2000));
+		assertFalse(snapshot.isUpToDate(source));
+		assertFalse(CorpusSnapshot.isUpToDate(source, snapshotFile));
+
+		CorpusSnapshot rewritten = CorpusSnapshot.open(source, snapshotFile);
+		assertTrue(rewritten.get(1).isRelevant());
+	}
+
+	@Test
+	public void comparesTheContentNotJustSizeAndTime() throws IOException {
+		CorpusSnapshot.write(source, snapshotFile);
+		// the same size and modification time, one relevance flag differs
+		Path other = folder.getRoot().toPath().resolve("other.xml");
+		Files.write(other, CORPUS.replaceFirst("<relevance>1</relevance>", "<relevance>0</relevance>").getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(other, Files.getLastModifiedTime(source));
+		assertEquals(Files.size(source), Files.size(other));
+
+		assertTrue(CorpusSnapshot.isUpToDate(source, snapshotFile));
+		assertFalse(CorpusSnapshot.isUpToDate(other, snapshotFile));
+		assertFalse(CorpusSnapshot.map(snapshotFile).isUpToDate(other));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFiles() throws IOException {
+		CorpusSnapshot.map(source);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Evaluator measures against values worked out by hand for small runs
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.Test;
+
+public class EvaluatorTest {
+
+	private static final double DELTA = 1e-12;
+
+	private static FixedBitSet relevant(int... docs) {
+		FixedBitSet relevant = new FixedBitSet(16);
+		for (int doc : docs)
+			relevant.set(doc);
+		return relevant;
+	}
+
+	private static RankedList run(int... docs) {
+		float[] scores = new float[docs.length];
+		for (int i = 0; i < docs.length; i++)
+			scores[i] = docs.length - i;
+		return new RankedList(docs, scores, docs.length, docs.length);
+	}
+
+	private static double log2(double x) {
+		return Math.log(x) / Math.log(2);
+	}
+
+	@Test
+	public void measuresOfARun() {
+		Evaluator evaluator = new Evaluator(2, 5);
+		// relevant documents at ranks 2 and 4, a third one is never retrieved
+		double[] values = evaluator.evaluate(run(3, 1, 4, 5, 9), relevant(1, 5, 7), 3);
+
+		assertEquals((1. / 2 + 2. / 4) / 3, values[Evaluator.AP], DELTA);
+		assertEquals(1. / 3, values[Evaluator.R_PRECISION], DELTA);
+		assertEquals(1. / 2, values[Evaluator.RECIPROCAL_RANK], DELTA);
+		assertEquals(1. / 2, values[evaluator.precisionColumn(0)], DELTA);
+		assertEquals(2. / 5, values[evaluator.precisionColumn(1)], DELTA);
+		assertEquals((1 / log2(3)) / (1 + 1 / log2(3)), values[evaluator.ndcgColumn(0)], DELTA);
+		assertEquals((1 / log2(3) + 1 / log2(5)) / (1 + 1 / log2(3) + 1 / log2(4)), values[evaluator.ndcgColumn(1)], DELTA);
+		// recall 1/3 and 2/3 are both reached at precision 1/2, full recall never
+		for (int level = 0; level <= 6; level++)
+			assertEquals("ip@" + level, 0.5, values[evaluator.curveColumn(level)], DELTA);
+		for (int level = 7; level <= 10; level++)
+			assertEquals("ip@" + level, 0, values[evaluator.curveColumn(level)], DELTA);
+	}
+
+	@Test
+	public void interpolatedPrecisionTakesTheBestLaterPrecision() {
+		Evaluator evaluator = new Evaluator();
+		// precision 1/2 at recall 1/2, then 2/3 at recall 1
+		double[] values = evaluator.evaluate(run(0, 1, 2), relevant(1, 2), 2);
+
+		assertEquals((1. / 2 + 2. / 3) / 2, values[Evaluator.AP], DELTA);
+		assertEquals(1. / 2, values[Evaluator.R_PRECISION], DELTA);
+		for (int level = 0; level <= 10; level++)
+			assertEquals("ip@" + level, 2. / 3, values[evaluator.curveColumn(level)], DELTA);
+	}
+
+	@Test
+	public void cutoffsBeyondTheRunCountMissingRanksAsNotRelevant() {
+		Evaluator evaluator = new Evaluator(5);
+		double[] values = evaluator.evaluate(run(1), relevant(1, 5, 7), 3);
+
+		assertEquals(1. / 3, values[Evaluator.AP], DELTA);
+		assertEquals(1. / 3, values[Evaluator.R_PRECISION], DELTA);
+		assertEquals(1, values[Evaluator.RECIPROCAL_RANK], DELTA);
+		assertEquals(1. / 5, values[evaluator.precisionColumn(0)], DELTA);
+		assertEquals(1 / (1 + 1 / log2(3) + 1 / log2(4)), values[evaluator.ndcgColumn(0)], DELTA);
+	}
+
+	@Test
+	public void noRelevantDocumentsGiveZeros() {
+		Evaluator evaluator = new Evaluator();
+		double[] values = evaluator.evaluate(run(1, 2, 3), relevant(), 0);
+		for (int column = 0; column < evaluator.size(); column++)
+			assertEquals(evaluator.columns()[column], 0, values[column], 0);
+	}
+
+	@Test
+	public void writesAtTheOffsetOnly() {
+		Evaluator evaluator = new Evaluator(1);
+		double[] values = new double[2 * evaluator.size()];
+		values[0] = -1;
+		RankedList run = run(1);
+		evaluator.evaluate(run.docIds(), run.scores(), run.size(), relevant(1), 1, values, evaluator.size());
+
+		assertEquals(-1, values[0], 0);
+		assertEquals(1, values[evaluator.size() + Evaluator.AP], DELTA);
+		assertEquals(1, values[evaluator.size() + evaluator.ndcgColumn(0)], DELTA);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsCutoffsBelowOne() {
+		new Evaluator(0, 5);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Changes reach an index without a rebuild: the catalog syncs a heap index
+ * with an edited corpus, and upsert/delete are searchable before a commit
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IncrementalIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private LuceneSearchApp engine;
+
+	@Before
+	public void setUp() throws IOException {
+		engine = new LuceneSearchApp();
+		engine.out = new PrintStream(new ByteArrayOutputStream(), false, "UTF-8");
+		engine.setDirectoryType(DirectoryType.RAM);
+		engine.setRankingMethod("1", 2);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		engine.close();
+		DirectoryType.RAM.remove(engine.indexPath);
+	}
+
+	private static String item(String title, String abstractText) {
+		return "  <item>\n    <title>" + title + "</title>\n    <abstract>" + abstractText + "</abstract>\n"
+				+ "    <search_task_number>2</search_task_number>\n    <query>spam filtering</query>\n"
+				+ "    <relevance>0</relevance>\n  </item>\n";
+	}
+
+	private Path corpus(String... items) throws IOException {
+		Path corpus = folder.getRoot().toPath().resolve("corpus.xml");
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<results>\n");
+		for (String item : items)
+			xml.append(item);
+		Files.write(corpus, xml.append("</results>\n").toString().getBytes(StandardCharsets.UTF_8));
+		return corpus;
+	}
+
+	// title and abstract of every live document
+	private static Map<String, String> documents(IndexReader reader) throws IOException {
+		Map<String, String> docs = new TreeMap<String, String>();
+		Bits liveDocs = MultiFields.getLiveDocs(reader);
+		for (int doc = 0; doc < reader.maxDoc(); doc++) {
+			if (liveDocs == null || liveDocs.get(doc))
+				docs.put(reader.document(doc).get("title"), reader.document(doc).get("abstract_text"));
+		}
+		return docs;
+	}
+
+	// the engine's shared searcher, refreshed to its latest changes
+	private IndexSearcher acquire() throws IOException {
+		engine.refresh();
+		return engine.searcherManager.acquire();
+	}
+
+	// what the engine's searches see
+	private Map<String, String> searched() throws IOException {
+		IndexSearcher searcher = acquire();
+		try {
+			return documents(searcher.getIndexReader());
+		} finally {
+			engine.searcherManager.release(searcher);
+		}
+	}
+
+	// what the last commit holds
+	private Map<String, String> committed() throws IOException {
+		try (Directory directory = DirectoryType.RAM.open(engine.indexPath);
+				DirectoryReader reader = DirectoryReader.open(directory)) {
+			return documents(reader);
+		}
+	}
+
+	private static Map<String, String> map(String... titlesAndAbstracts) {
+		Map<String, String> map = new TreeMap<String, String>();
+		for (int i = 0; i < titlesAndAbstracts.length; i += 2)
+			map.put(titlesAndAbstracts[i], titlesAndAbstracts[i + 1]);
+		return map;
+	}
+
+	@Test
+	public void syncsAnEditedCorpus() throws IOException {
+		// built from scratch, whatever another test left in the heap catalog
+		Path corpus = corpus(item("Alpha", "first"), item("Beta", "second"), item("Gamma", "third"));
+		engine.openIndex(corpus.toString());
+		assertEquals(map("Alpha", "first", "Beta", "second", "Gamma", "third"), searched());
+
+		// Alpha changed, Beta kept, Gamma removed and Delta added
+		corpus(item("Alpha", "first, revised"), item("Beta", "second"), item("Delta", "fourth"));
+		engine.setIncremental(true);
+		engine.openIndex(corpus.toString());
+
+		assertEquals(map("Alpha", "first, revised", "Beta", "second", "Delta", "fourth"), searched());
+		assertEquals(searched(), committed());
+		IndexSearcher searcher = acquire();
+		try {
+			// updated in place: the replaced Alpha and the removed Gamma are deletions, Beta was not rewritten
+			assertEquals(5, searcher.getIndexReader().maxDoc());
+			assertEquals(2, searcher.getIndexReader().numDeletedDocs());
+		} finally {
+			engine.searcherManager.release(searcher);
+		}
+	}
+
+	@Test
+	public void liveChangesAreSearchableBeforeTheCommit() throws IOException {
+		engine.index(Arrays.asList(
+				new DocumentInCollection("Alpha", "first", 2, "spam filtering", false),
+				new DocumentInCollection("Beta", "second", 2, "spam filtering", false),
+				new DocumentInCollection("Gamma", "third", 2, "spam filtering", true)), folder.getRoot().toPath().resolve("live"));
+
+		engine.upsert(Arrays.asList(
+				new DocumentInCollection("Alpha", "first, revised", 2, "spam filtering", false),
+				new DocumentInCollection("Delta", "fourth", 2, "spam filtering", true)));
+		engine.delete(Collections.singleton(DocumentInCollection.key(2, "Gamma", 0)));
+		engine.refresh();
+
+		assertEquals(map("Alpha", "first, revised", "Beta", "second", "Delta", "fourth"), searched());
+		assertEquals(map("Alpha", "first", "Beta", "second", "Gamma", "third"), committed());
+		engine.commit();
+		assertEquals(searched(), committed());
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * IndexCatalog reuses an index while its fingerprint matches and rebuilds it
+ * once the corpus or the analysis chain changes
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IndexCatalogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private IndexCatalog catalog;
+	private Path corpus;
+	// the directories built so far, in order
+	private final List<Path> built = new ArrayList<Path>();
+
+	@Before
+	public void setUp() throws IOException {
+		catalog = new IndexCatalog(folder.newFolder("index").toPath());
+		corpus = folder.getRoot().toPath().resolve("corpus.xml");
+		Files.write(corpus, "<results></results>\n".getBytes(StandardCharsets.UTF_8));
+	}
+
+	// an empty index committed with the fingerprint, as the engine's builders do
+	private Path open(String chain, Analyzer analyzer) throws IOException {
+		return catalog.open(chain, analyzer, "1", corpus.toString(), DirectoryType.FS, (dir, fingerprint) -> {
+			built.add(dir);
+			try (Directory directory = FSDirectory.open(dir);
+					IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+				IndexCatalog.setFingerprint(writer, fingerprint);
+				writer.commit();
+			}
+		});
+	}
+
+	@Test
+	public void reusesAnIndexWhileTheFingerprintMatches() throws IOException {
+		Path first = open("standard", new StandardAnalyzer());
+		Path second = open("standard", new StandardAnalyzer());
+
+		assertEquals(first, second);
+		assertEquals(1, built.size());
+		assertTrue(IndexCatalog.isUpToDate(first, IndexCatalog.fingerprint(new StandardAnalyzer(), "1", corpus)));
+	}
+
+	@Test
+	public void rebuildsOnceTheCorpusChanges() throws IOException {
+		Path before = open("standard", new StandardAnalyzer());
+		String stale = IndexCatalog.fingerprint(new StandardAnalyzer(), "1", corpus);
+		Files.write(corpus, "<results><item><title>new</title></item></results>\n".getBytes(StandardCharsets.UTF_8));
+		Path after = open("standard", new StandardAnalyzer());
+
+		// same schema, same directory, built again for the new corpus
+		assertEquals(before, after);
+		assertEquals(2, built.size());
+		assertFalse(IndexCatalog.isUpToDate(after, stale));
+		assertTrue(IndexCatalog.isUpToDate(after, IndexCatalog.fingerprint(new StandardAnalyzer(), "1", corpus)));
+	}
+
+	@Test
+	public void buildsAnIndexPerAnalysisChain() throws IOException {
+		Path standard = open("standard", new StandardAnalyzer());
+		Path english = open("english", new EnglishAnalyzer());
+		// other stopwords are another chain even for the same analyzer class
+		Path noStopwords = open("standard-nostop", new StandardAnalyzer(CharArraySet.EMPTY_SET));
+
+		assertEquals(3, built.size());
+		assertFalse(standard.equals(english));
+		assertFalse(standard.equals(noStopwords));
+		open("standard", new StandardAnalyzer());
+		open("english", new EnglishAnalyzer());
+		open("standard-nostop", new StandardAnalyzer(CharArraySet.EMPTY_SET));
+		assertEquals(3, built.size());
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Parsing and quoting of the query server's JSON
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class JsonTest {
+
+	@Test
+	public void parsesAnObject() {
+		Object parsed = Json.parse(" {\"query\": \"recommender systems\", \"k\": 20, \"notInTitle\": [\"survey\", \"review\"],"
+				+ " \"nested\": {\"on\": true, \"off\": false, \"none\": null, \"empty\": [], \"x\": -1.5e2}} ");
+		Map<String, Object> nested = new LinkedHashMap<String, Object>();
+		nested.put("on", Boolean.TRUE);
+		nested.put("off", Boolean.FALSE);
+		nested.put("none", null);
+		nested.put("empty", Collections.emptyList());
+		nested.put("x", -150.0);
+		Map<String, Object> expected = new LinkedHashMap<String, Object>();
+		expected.put("query", "recommender systems");
+		expected.put("k", 20.0);
+		expected.put("notInTitle", Arrays.asList("survey", "review"));
+		expected.put("nested", nested);
+		assertEquals(expected, parsed);
+	}
+
+	@Test
+	public void parsesScalars() {
+		assertEquals("x", Json.parse("\"x\""));
+		assertEquals(0.0, Json.parse("0"));
+		assertEquals(Boolean.TRUE, Json.parse("true"));
+		assertNull(Json.parse(" null "));
+		assertEquals(Collections.emptyMap(), Json.parse("{}"));
+	}
+
+	@Test
+	public void decodesEscapes() {
+		assertEquals("a\"b\\c/d\b\f\n\r\t\u00e9\u4e2d", Json.parse("\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\\u00e9\\u4E2D\""));
+	}
+
+	@Test
+	public void quoteRoundTrips() {
+		String[] strings = {"", "plain", "quote \" and backslash \\", "lines\nand\ttabs\r", "control \u0001\u001f", "café 推荐"};
+		for (String s : strings)
+			assertEquals(s, Json.parse(Json.quote(s)));
+		assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", Json.quote("a\"b\\c\n\u0001"));
+	}
+
+	@Test
+	public void limitsTheNesting() {
+		StringBuilder deepest = new StringBuilder();
+		for (int i = 0; i < Json.MAX_DEPTH; i++)
+			deepest.append(i % 2 == 0 ? "[" : "{\"a\": ");
+		deepest.append('0');
+		for (int i = Json.MAX_DEPTH - 1; i >= 0; i--)
+			deepest.append(i % 2 == 0 ? "]" : "}");
+		Json.parse(deepest.toString());
+
+		StringBuilder tooDeep = new StringBuilder();
+		for (int i = 0; i < 100000; i++)
+			tooDeep.append('[');
+		try {
+			Json.parse(tooDeep.toString());
+			fail("parsed " + tooDeep.length() + " nested arrays");
+		} catch (IllegalArgumentException e) {
+			assertEquals("malformed JSON at offset " + Json.MAX_DEPTH + ": nested deeper than " + Json.MAX_DEPTH, e.getMessage());
+		}
+		// depth is counted down again when a value is closed
+		StringBuilder siblings = new StringBuilder("[");
+		for (int i = 0; i < 2 * Json.MAX_DEPTH; i++)
+			siblings.append(i == 0 ? "" : ", ").append("[[]]");
+		Json.parse(siblings.append(']').toString());
+	}
+
+	@Test
+	public void rejectsMalformedInput() {
+		String[] malformed = {"", "{", "{\"a\" 1}", "{\"a\": 1,}", "{a: 1}", "[1, 2", "[1 2]", "\"open", "\"bad \\u12g4\"",
+				"\"short \\u12\"", "tru", "nul", "-", "1.2.3", "{} {}", "01x", "@"};
+		for (String text : malformed) {
+			try {
+				Json.parse(text);
+				fail("parsed " + text);
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("malformed JSON at offset "));
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * A ParameterSweep gives one evaluated run per grid point for the analysis
+ * chain of every ranking method
+ */
+package ir_course;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParameterSweepTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static String item(String title, String abstractText, int task, boolean relevant) {
+		return "  <item>\n    <title>" + title + "</title>\n    <abstract>" + abstractText + "</abstract>\n"
+				+ "    <search_task_number>" + task + "</search_task_number>\n    <query>q</query>\n"
+				+ "    <relevance>" + (relevant ? 1 : 0) + "</relevance>\n  </item>\n";
+	}
+
+	@Test
+	public void evaluatesEveryGridPointPerChain() throws IOException {
+		Path corpus = folder.getRoot().toPath().resolve("corpus.xml");
+		Files.write(corpus, ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<results>\n"
+				+ item("Filtering spam email", "Spam filters for email.", 2, true)
+				+ item("Recommender systems", "Recommending items to users.", 2, false)
+				+ item("Email clients", "Reading email on the phone.", 2, false)
+				+ item("Filtering spam email", "The same title in another task.", 3, true)
+				+ "</results>\n").getBytes(StandardCharsets.UTF_8));
+		Map<String, Similarity> grid = new LinkedHashMap<String, Similarity>();
+		grid.put("classic", new ClassicSimilarity());
+		grid.putAll(ParameterSweep.bm25Grid(new float[] {0.6f, 1.2f}, new float[] {0f, 0.75f}));
+		grid.putAll(ParameterSweep.dirichletGrid(new float[] {100, 2000}));
+		String[] queries = {"spam", "email"};
+
+		try (ParameterSweep sweep = new ParameterSweep(corpus.toString(), 2, 2)) {
+			sweep.setDirectoryType(DirectoryType.RAM);
+			// with and without stopwords, two chains and two indexes
+			for (String method : new String[] {"1", "2"}) {
+				EvaluationTable table = sweep.run(method, grid, queries, new Evaluator());
+
+				assertArrayEquals(new String[] {"classic", "bm25(0.60,0.00)", "bm25(0.60,0.75)", "bm25(1.20,0.00)",
+						"bm25(1.20,0.75)", "lmd(100)", "lmd(2000)"}, table.getRuns());
+				assertArrayEquals(new String[] {"2.1", "2.2"}, table.getQueries());
+				for (int run = 0; run < table.getRuns().length; run++) {
+					for (int query = 0; query < queries.length; query++)
+						assertTrue(table.isEvaluated(run, query));
+					// the only task 2 document with spam is the relevant one
+					assertEquals(1, table.get(run, 0, Evaluator.AP), 0);
+				}
+			}
+		}
+	}
+}
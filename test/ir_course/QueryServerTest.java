@@ -0,0 +1,135 @@
+/*
+ * Request body limits of the QueryServer, and its responses over HTTP for a
+ * small heap index
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QueryServerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private LuceneSearchApp engine;
+	private Path path;
+	private QueryServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		engine = new LuceneSearchApp();
+		engine.out = new PrintStream(new ByteArrayOutputStream(), false, "UTF-8");
+		engine.setDirectoryType(DirectoryType.RAM);
+		engine.setRankingMethod("4", 2);
+		path = folder.getRoot().toPath().resolve("served");
+		engine.index(Arrays.asList(
+				new DocumentInCollection("Spam filtering of email", "Filters for spam.", 2, "spam filtering", true),
+				new DocumentInCollection("Spam in social networks", "Detecting spam accounts.", 2, "spam filtering", false),
+				new DocumentInCollection("Recommender systems", "Items for users.", 2, "spam filtering", false),
+				new DocumentInCollection("Spam spam spam", "Another task.", 3, "spam filtering", false)), path);
+		server = new QueryServer(engine, new InetSocketAddress("127.0.0.1", 0), 2);
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+		engine.close();
+		DirectoryType.RAM.remove(path);
+	}
+
+	// status and body of a request to /search
+	private String[] request(String method, byte[] body) throws IOException {
+		URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/search");
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try {
+			connection.setRequestMethod(method);
+			if (body != null) {
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(body.length);
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(body);
+				}
+			}
+			int status = connection.getResponseCode();
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				return new String[] {String.valueOf(status), new String(QueryServer.readAll(in, Integer.MAX_VALUE), StandardCharsets.UTF_8)};
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private String[] post(String body) throws IOException {
+		return request("POST", body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void searchesTheTask() throws IOException {
+		String[] response = post("{\"query\": \"spam\", \"k\": 5}");
+		assertEquals("200", response[0]);
+
+		Map<String, Object> result = (Map<String, Object>) Json.parse(response[1]);
+		List<Object> hits = (List<Object>) result.get("hits");
+		// the spam document of task 3 is filtered out
+		assertEquals(2.0, result.get("totalHits"));
+		assertEquals(2, hits.size());
+		Map<String, Object> first = (Map<String, Object>) hits.get(0);
+		assertEquals(DocumentInCollection.key(2, (String) first.get("title"), 0), first.get("key"));
+		assertTrue(((String) first.get("title")).startsWith("Spam"));
+
+		result = (Map<String, Object>) Json.parse(post("{\"title\": \"spam\", \"k\": 1}")[1]);
+		assertEquals(1, ((List<Object>) result.get("hits")).size());
+	}
+
+	@Test
+	public void rejectsBadRequests() throws IOException {
+		assertEquals("400", post("{\"query\": \"spam\"")[0]);
+		assertEquals("400", post("[\"spam\"]")[0]);
+		assertEquals("400", post("{\"k\": 10}")[0]);
+		for (String k : new String[] {"0", "1.5", "\"10\"", "1001"}) {
+			String[] response = post("{\"query\": \"spam\", \"k\": " + k + "}");
+			assertEquals(k, "400", response[0]);
+			assertTrue(response[1], response[1].contains("\\\"k\\\" must be a whole number"));
+		}
+		assertEquals("405", request("GET", null)[0]);
+		assertEquals("413", request("POST", new byte[QueryServer.MAX_BODY_BYTES + 1])[0]);
+		// still serving
+		assertEquals("200", post("{\"query\": \"spam\"}")[0]);
+	}
+
+	@Test
+	public void readsABodyUpToTheLimit() throws IOException {
+		byte[] body = new byte[20000];
+		assertEquals(body.length, QueryServer.readAll(new ByteArrayInputStream(body), body.length).length);
+		assertEquals(0, QueryServer.readAll(new ByteArrayInputStream(new byte[0]), 0).length);
+	}
+
+	@Test(expected = QueryServer.BodyTooLargeException.class)
+	public void refusesALongerBody() throws IOException {
+		QueryServer.readAll(new ByteArrayInputStream(new byte[QueryServer.MAX_BODY_BYTES + 1]), QueryServer.MAX_BODY_BYTES);
+	}
+}
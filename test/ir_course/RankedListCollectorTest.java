@@ -0,0 +1,130 @@
+/*
+ * Ranking and merging of RankedListCollector: best score first, ties by doc id
+ */
+package ir_course;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+public class RankedListCollectorTest {
+
+	// documents with repeated texts, so that several of them score the same
+	private static final String[] TEXTS = {
+		"search", "search engine", "search search", "engine", "search engine",
+		"search", "search search search", "engine engine", "search engine", "search"
+	};
+
+	private static Directory index() throws IOException {
+		Directory directory = new RAMDirectory();
+		try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+			for (String text : TEXTS) {
+				Document doc = new Document();
+				doc.add(new TextField("text", text, Field.Store.NO));
+				writer.addDocument(doc);
+			}
+		}
+		return directory;
+	}
+
+	private static RankedList list(int[] docs, float[] scores, long totalHits) {
+		return new RankedList(docs, scores, docs.length, totalHits);
+	}
+
+	private static int[] docs(RankedList list) {
+		return Arrays.copyOf(list.docIds(), list.size());
+	}
+
+	private static float[] scores(RankedList list) {
+		return Arrays.copyOf(list.scores(), list.size());
+	}
+
+	@Test
+	public void ranksLikeTheTopScoreCollector() throws IOException {
+		try (Directory directory = index(); IndexReader reader = DirectoryReader.open(directory)) {
+			IndexSearcher searcher = new IndexSearcher(reader);
+			TermQuery query = new TermQuery(new Term("text", "search"));
+			for (int depth : new int[] {1, 3, 5, 100}) {
+				RankedListCollector collector = new RankedListCollector(depth);
+				searcher.search(query, collector);
+				RankedList list = collector.getRankedList();
+				TopDocs top = searcher.search(query, depth);
+
+				assertEquals(top.totalHits, list.getTotalHits());
+				assertEquals(top.scoreDocs.length, list.size());
+				for (int rank = 0; rank < list.size(); rank++) {
+					ScoreDoc hit = top.scoreDocs[rank];
+					assertEquals(hit.doc, list.doc(rank));
+					assertEquals(hit.score, list.score(rank), 0f);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void breaksTiesTowardsTheLowerDocId() throws IOException {
+		try (Directory directory = index(); IndexReader reader = DirectoryReader.open(directory)) {
+			RankedListCollector collector = new RankedListCollector(3);
+			new IndexSearcher(reader).search(new TermQuery(new Term("text", "engine")), collector);
+			RankedList list = collector.getRankedList();
+
+			// "engine engine" first, then the shortest single match, then the equal scores by doc id
+			assertEquals(5, list.getTotalHits());
+			assertArrayEquals(new int[] {7, 3, 1}, docs(list));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsANonPositiveDepth() {
+		new RankedListCollector(0);
+	}
+
+	@Test
+	public void mergeOrdersByScoreThenGlobalDocId() {
+		RankedList first = list(new int[] {2, 0, 1}, new float[] {3f, 2f, 1f}, 3);
+		RankedList second = list(new int[] {1, 0}, new float[] {3f, 2f}, 5);
+		RankedList merged = RankedListCollector.merge(Arrays.asList(first, second), new int[] {0, 10}, 10);
+
+		assertArrayEquals(new int[] {2, 11, 0, 10, 1}, docs(merged));
+		assertArrayEquals(new float[] {3f, 3f, 2f, 2f, 1f}, scores(merged), 0f);
+		assertEquals(8, merged.getTotalHits());
+	}
+
+	@Test
+	public void mergeKeepsTheBestDepthHits() {
+		RankedList first = list(new int[] {0, 1, 2}, new float[] {5f, 3f, 1f}, 3);
+		RankedList second = list(new int[] {0, 1, 2}, new float[] {4f, 3f, 2f}, 3);
+		RankedList merged = RankedListCollector.merge(Arrays.asList(first, second), new int[] {0, 3}, 4);
+
+		assertArrayEquals(new int[] {0, 3, 1, 4}, docs(merged));
+		assertArrayEquals(new float[] {5f, 4f, 3f, 3f}, scores(merged), 0f);
+		assertEquals(6, merged.getTotalHits());
+	}
+
+	@Test
+	public void mergeOfNothingIsEmpty() {
+		RankedList merged = RankedListCollector.merge(Collections.<RankedList>emptyList(), new int[0], 10);
+		assertEquals(0, merged.size());
+		assertEquals(0, merged.getTotalHits());
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Hits, misses and evictions of the ResultCache
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ResultCacheTest {
+
+	private static RankedList list(int size) {
+		int[] docs = new int[size];
+		float[] scores = new float[size];
+		for (int i = 0; i < size; i++) {
+			docs[i] = i;
+			scores[i] = size - i;
+		}
+		return new RankedList(docs, scores, size, size);
+	}
+
+	@Test
+	public void countsHitsAndMisses() {
+		ResultCache cache = new ResultCache(1 << 20);
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.put("a", list(10)));
+		RankedList cached = cache.get("a");
+		assertEquals(10, cached.size());
+		assertSame(cached, cache.get("a"));
+
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0, cache.getEvictions());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsed() {
+		// room for two entries of 10 hits, about 256 + 2 + 80 bytes each
+		ResultCache cache = new ResultCache(700);
+		cache.put("a", list(10));
+		cache.put("b", list(10));
+		cache.get("a");
+		assertEquals(1, cache.put("c", list(10)));
+
+		assertNull(cache.get("b"));
+		assertEquals(10, cache.get("a").size());
+		assertEquals(10, cache.get("c").size());
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		// an entry larger than the cache pushes out everything, itself included
+		assertEquals(3, cache.put("d", list(100)));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * RunWriter output in TREC run format, and its behaviour once closed
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RunWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesRankedListsInOrder() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("method1.run");
+		try (RunWriter writer = new RunWriter(file, 2)) {
+			writer.write("q1", "method1", new String[] {"d3", "d1", "unused"}, new float[] {2.5f, 1f, 0f}, 2);
+			writer.flush();
+			assertEquals(2, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+			for (int q = 2; q <= 5; q++)
+				writer.write("q" + q, "method1", new String[] {"d" + q}, new float[] {q}, 1);
+		}
+		assertEquals(Arrays.asList(
+				"q1 Q0 d3 1 2.5 method1",
+				"q1 Q0 d1 2 1.0 method1",
+				"q2 Q0 d2 1 2.0 method1",
+				"q3 Q0 d3 1 3.0 method1",
+				"q4 Q0 d4 1 4.0 method1",
+				"q5 Q0 d5 1 5.0 method1"), Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+
+	@Test(expected = IOException.class)
+	public void writeAfterCloseFails() throws IOException {
+		RunWriter writer = new RunWriter(folder.getRoot().toPath().resolve("closed.run"), 1);
+		writer.close();
+		// would block forever on the full queue if it were accepted
+		writer.write("q1", "t", new String[] {"d1"}, new float[] {1f}, 1);
+		writer.write("q2", "t", new String[] {"d2"}, new float[] {1f}, 1);
+	}
+
+	@Test(expected = IOException.class)
+	public void flushAfterCloseFails() throws IOException {
+		RunWriter writer = new RunWriter(folder.getRoot().toPath().resolve("closed.run"));
+		writer.close();
+		writer.flush();
+	}
+
+	@Test
+	public void closeTwiceIsHarmless() throws IOException {
+		RunWriter writer = new RunWriter(folder.getRoot().toPath().resolve("twice.run"));
+		writer.close();
+		writer.close();
+	}
+
+	@Test
+	public void everyAcceptedWriteReachesTheFile() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("racing.run");
+		RunWriter writer = new RunWriter(file, 4);
+		AtomicInteger accepted = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				try {
+					for (int q = 0; ; q++) {
+						writer.write("q" + q, "t", new String[] {"d"}, new float[] {1f}, 1);
+						accepted.incrementAndGet();
+					}
+				} catch (IOException e) {
+					// closed
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		while (accepted.get() < 1000)
+			Thread.yield();
+		writer.close();
+		for (Thread thread : threads)
+			thread.join();
+		assertTrue(accepted.get() >= 1000);
+		assertEquals(accepted.get(), Files.readAllLines(file, StandardCharsets.UTF_8).size());
+	}
+
+	@Test
+	public void interruptedCloseStillWritesEverything() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("interrupted.run");
+		RunWriter writer = new RunWriter(file, 2);
+		for (int q = 0; q < 100; q++)
+			writer.write("q" + q, "t", new String[] {"d"}, new float[] {1f}, 1);
+		Thread.currentThread().interrupt();
+		try {
+			writer.close();
+		} finally {
+			assertTrue(Thread.interrupted());
+		}
+		assertEquals(100, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * A ShardedIndex ranks and scores like a single index of the same documents
+ */
+package ir_course;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.search.similarities.LMDirichletSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedIndexTest {
+
+	private static final int DOCS = 300;
+	private static final int SHARDS = 3;
+	private static final String[] WORDS = {"search", "index", "query", "rank", "score", "term", "shard", "merge", "cache", "token"};
+
+	private final Path single = Paths.get("sharded-index-test", "single");
+	private final List<Path> shards = new ArrayList<Path>();
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws IOException {
+		for (int s = 0; s < SHARDS; s++)
+			shards.add(Paths.get("sharded-index-test", "shard" + s));
+		executor = Executors.newFixedThreadPool(SHARDS);
+		Random random = new Random(17);
+		try (Directory singleDirectory = DirectoryType.RAM.open(single);
+				IndexWriter singleWriter = new IndexWriter(singleDirectory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+			List<IndexWriter> shardWriters = new ArrayList<IndexWriter>();
+			try {
+				for (Path shard : shards)
+					shardWriters.add(new IndexWriter(DirectoryType.RAM.open(shard), new IndexWriterConfig(new WhitespaceAnalyzer())));
+				for (int i = 0; i < DOCS; i++) {
+					StringBuilder text = new StringBuilder();
+					int length = 1 + random.nextInt(30);
+					for (int w = 0; w < length; w++)
+						text.append(WORDS[(int) Math.abs(random.nextGaussian() * 3) % WORDS.length]).append(' ');
+					Document doc = new Document();
+					doc.add(new StringField("id", "doc" + i, Field.Store.YES));
+					doc.add(new TextField("abstract", text.toString(), Field.Store.NO));
+					singleWriter.addDocument(doc);
+					shardWriters.get(random.nextInt(SHARDS)).addDocument(doc);
+				}
+			} finally {
+				for (IndexWriter writer : shardWriters) {
+					writer.close();
+					writer.getDirectory().close();
+				}
+			}
+		}
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		executor.shutdownNow();
+		DirectoryType.RAM.remove(single);
+		for (Path shard : shards)
+			DirectoryType.RAM.remove(shard);
+	}
+
+	private static BooleanQuery query(String... words) {
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		for (String word : words)
+			builder.add(new TermQuery(new Term("abstract", word)), Occur.SHOULD);
+		return builder.build();
+	}
+
+	// score of every hit by id
+	private static Map<String, Float> scores(IndexReader reader, RankedList hits) throws IOException {
+		Map<String, Float> scores = new HashMap<String, Float>();
+		for (int i = 0; i < hits.size(); i++)
+			scores.put(reader.document(hits.doc(i)).get("id"), hits.score(i));
+		return scores;
+	}
+
+	@Test
+	public void scoresEqualASingleIndex() throws IOException {
+		Similarity[] similarities = {new ClassicSimilarity(), new BM25Similarity(), new LMDirichletSimilarity()};
+		String[][] queries = {{"search"}, {"token", "cache"}, {"rank", "score", "merge"}, {"missing"}};
+		try (Directory directory = DirectoryType.RAM.open(single);
+				DirectoryReader reader = DirectoryReader.open(directory);
+				ShardedIndex sharded = ShardedIndex.open(shards, DirectoryType.RAM, executor)) {
+			assertEquals(SHARDS, sharded.getShardCount());
+			assertEquals(DOCS, sharded.getReader().numDocs());
+			for (Similarity similarity : similarities) {
+				IndexSearcher searcher = new IndexSearcher(reader);
+				searcher.setSimilarity(similarity);
+				for (String[] words : queries) {
+					String name = similarity + " " + Arrays.toString(words);
+					// every hit, so ties at the cut-off cannot make the hit sets differ
+					RankedListCollector collector = new RankedListCollector(DOCS);
+					searcher.search(query(words), collector);
+					RankedList expected = collector.getRankedList();
+					RankedList actual = sharded.search(query(words), DOCS, similarity);
+					assertEquals(name, expected.getTotalHits(), actual.getTotalHits());
+					assertEquals(name, scores(reader, expected), scores(sharded.getReader(), actual));
+
+					// the top k has the same scores, ties may be ordered differently
+					RankedList top = sharded.search(query(words), 10, similarity);
+					assertArrayEquals(name, Arrays.copyOf(expected.scores(), Math.min(10, expected.size())),
+							Arrays.copyOf(top.scores(), top.size()), 0f);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * SharedAnalysis replays the same tokens, positions and offsets as the
+ * Lucene analyzer of every chain of the AnalysisRegistry
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.Test;
+
+public class SharedAnalysisTest {
+
+	private static final String[] TEXTS = {
+		"The Recommender's systems are running, and they're not what it is",
+		"Novelty and diversity: 3.5 items per user-session in e-mail RECOMMENDATIONS.",
+		"an of the",
+		"",
+		"   ",
+		"café naïve résumés, 文献检索 and the end of it",
+	};
+
+	// every token as term/position increment/start-end, then the final offset and increment
+	private static List<String> tokens(TokenStream stream) throws IOException {
+		CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+		PositionIncrementAttribute positionIncrement = stream.addAttribute(PositionIncrementAttribute.class);
+		OffsetAttribute offset = stream.addAttribute(OffsetAttribute.class);
+		List<String> tokens = new ArrayList<String>();
+		stream.reset();
+		while (stream.incrementToken())
+			tokens.add(term + "/" + positionIncrement.getPositionIncrement() + "/" + offset.startOffset() + "-" + offset.endOffset());
+		stream.end();
+		tokens.add("end/" + positionIncrement.getPositionIncrement() + "/" + offset.endOffset());
+		stream.close();
+		return tokens;
+	}
+
+	@Test
+	public void replaysMatchTheAnalyzers() throws IOException {
+		List<AnalysisRegistry.Chain> chains = AnalysisRegistry.chains();
+		SharedAnalysis shared = new SharedAnalysis(chains);
+		SharedAnalysis.TokenBuffer buffer = new SharedAnalysis.TokenBuffer();
+		for (String text : TEXTS) {
+			shared.tokenize(text, buffer);
+			for (AnalysisRegistry.Chain chain : chains) {
+				SharedAnalysis.ChainReplay replay = new SharedAnalysis.ChainReplay(chain);
+				replay.setBuffer(buffer);
+				try (Analyzer analyzer = chain.analyzer()) {
+					assertEquals(chain + ": " + text, tokens(analyzer.tokenStream("abstract", text)), tokens(replay));
+				}
+				// a replay can be consumed again, like a reused analyzer chain
+				assertEquals(chain + ": " + text, tokens(replay), tokens(replay));
+			}
+		}
+	}
+
+	@Test
+	public void aBufferIsReusedAcrossTexts() throws IOException {
+		AnalysisRegistry.Chain chain = AnalysisRegistry.chain(true, true);
+		SharedAnalysis shared = new SharedAnalysis(Collections.singletonList(chain));
+		SharedAnalysis.TokenBuffer buffer = new SharedAnalysis.TokenBuffer();
+		shared.tokenize(TEXTS[0], buffer);
+		shared.tokenize(TEXTS[1], buffer);
+		SharedAnalysis.ChainReplay replay = new SharedAnalysis.ChainReplay(chain);
+		replay.setBuffer(buffer);
+		try (Analyzer analyzer = chain.analyzer()) {
+			assertEquals(tokens(analyzer.tokenStream("title", TEXTS[1])), tokens(replay));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * p-values of SignificanceTest on inputs whose null distribution is known
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.Test;
+
+public class SignificanceTestTest {
+
+	private static final int SAMPLES = 100000;
+
+	// a run that finds the only relevant document of every query (AP 1) and one that
+	// finds it if badFinds is set (AP 1) or never does (AP 0)
+	private static EvaluationTable table(boolean badFinds, String... queries) {
+		EvaluationTable table = new EvaluationTable(new Evaluator(), new String[] {"good", "bad"}, queries);
+		FixedBitSet relevant = new FixedBitSet(2);
+		relevant.set(0);
+		for (String query : queries) {
+			table.evaluate("good", query, new RankedList(new int[] {0}, new float[] {1f}, 1, 1), relevant, 1);
+			table.evaluate("bad", query, new RankedList(new int[] {badFinds ? 0 : 1}, new float[] {1f}, 1, 1), relevant, 1);
+		}
+		return table;
+	}
+
+	@Test
+	public void identicalRunsAreNotSignificant() throws IOException {
+		EvaluationTable table = table(true, "q1", "q2", "q3");
+		List<SignificanceTest.Result> results = new SignificanceTest(1000, 1, 2).compareAll(table, Evaluator.AP);
+
+		assertEquals(1, results.size());
+		assertEquals(1, results.get(0).getRandomizationP(), 0);
+		assertEquals(1, results.get(0).getBootstrapP(), 0);
+	}
+
+	@Test
+	public void consistentDifferenceOverFourQueries() throws IOException {
+		List<SignificanceTest.Result> results = new SignificanceTest(SAMPLES, 7, 2).compareAll(table(false, "q1", "q2", "q3", "q4"), Evaluator.AP);
+		SignificanceTest.Result result = results.get(0);
+
+		assertEquals("good", result.getRunA());
+		assertEquals(1, result.getMeanA(), 0);
+		assertEquals(0, result.getMeanB(), 0);
+		// only the 2 of 16 sign assignments without a flip or with all four flipped are as extreme
+		assertEquals(2. / 16, result.getRandomizationP(), 0.01);
+		// every resample of equal differences has the observed mean, none is extreme
+		assertEquals(1. / (SAMPLES + 1), result.getBootstrapP(), 0);
+	}
+
+	@Test
+	public void pairsOnlyQueriesEvaluatedInBothRuns() throws IOException {
+		EvaluationTable table = table(false, "q1", "q2", "q3", "q4");
+		EvaluationTable incomplete = new EvaluationTable(new Evaluator(), new String[] {"good", "bad"}, new String[] {"q1", "q2", "q3", "q4", "q5", "q6"});
+		FixedBitSet relevant = new FixedBitSet(2);
+		relevant.set(0);
+		for (String query : table.getQueries()) {
+			incomplete.evaluate("good", query, new RankedList(new int[] {0}, new float[] {1f}, 1, 1), relevant, 1);
+			incomplete.evaluate("bad", query, new RankedList(new int[] {1}, new float[] {1f}, 1, 1), relevant, 1);
+		}
+		// q5 only in one run and q6 in none, neither may count as a 0 in the other
+		incomplete.evaluate("bad", "q5", new RankedList(new int[] {1}, new float[] {1f}, 1, 1), relevant, 1);
+		SignificanceTest test = new SignificanceTest(10000, 5, 2);
+		SignificanceTest.Result expected = test.compareAll(table, Evaluator.AP).get(0);
+		SignificanceTest.Result actual = test.compareAll(incomplete, Evaluator.AP).get(0);
+
+		assertEquals(4, actual.getQueries());
+		assertEquals(expected.getMeanA(), actual.getMeanA(), 0);
+		assertEquals(expected.getMeanB(), actual.getMeanB(), 0);
+		assertEquals(expected.getRandomizationP(), actual.getRandomizationP(), 0);
+		assertEquals(expected.getBootstrapP(), actual.getBootstrapP(), 0);
+	}
+
+	@Test
+	public void pValuesDependOnTheSeedOnly() throws IOException {
+		EvaluationTable table = table(false, "q1", "q2", "q3", "q4", "q5");
+		SignificanceTest.Result single = new SignificanceTest(10000, 3, 1).compareAll(table, Evaluator.AP).get(0);
+		SignificanceTest.Result parallel = new SignificanceTest(10000, 3, 4).compareAll(table, Evaluator.AP).get(0);
+
+		assertEquals(single.getRandomizationP(), parallel.getRandomizationP(), 0);
+		assertEquals(single.getBootstrapP(), parallel.getBootstrapP(), 0);
+	}
+
+	@Test
+	public void randomizationOfOneSidedDifferences() {
+		// |sum| >= 2 for the sign patterns ++ and --, half of the four
+		long extreme = SignificanceTest.randomization(new double[] {0.5, 1.5}, SAMPLES, new SplittableRandom(11));
+		assertEquals(0.5, (double) extreme / SAMPLES, 0.01);
+	}
+
+	@Test
+	public void bootstrapOfUnequalDifferences() {
+		// resampled sums of {0, 2} are 0, 2, 2 and 4, half of them 2 or more away from the observed 2
+		long extreme = SignificanceTest.bootstrap(new double[] {0, 2}, SAMPLES, new SplittableRandom(13));
+		assertEquals(0.5, (double) extreme / SAMPLES, 0.01);
+	}
+}
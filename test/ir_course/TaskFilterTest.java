@@ -0,0 +1,82 @@
+/*
+ * One index holds every search task, the task filter of a query keeps the
+ * hits of the other tasks out of its ranked list
+ */
+package ir_course;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TaskFilterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private LuceneSearchApp engine;
+	private Path path;
+
+	@Before
+	public void setUp() throws IOException {
+		engine = new LuceneSearchApp();
+		engine.out = new PrintStream(new ByteArrayOutputStream(), false, "UTF-8");
+		engine.setDirectoryType(DirectoryType.RAM);
+		engine.setRankingMethod("4", 2);
+		List<DocumentInCollection> docs = new ArrayList<DocumentInCollection>();
+		for (int task = 1; task <= 3; task++) {
+			for (int i = 0; i < 5; i++) {
+				// the other tasks repeat the query words more often, so they would rank first unfiltered
+				String text = task == 2 ? "spam filter" : "spam spam spam filter filter";
+				docs.add(new DocumentInCollection(text + " " + task + "." + i, text, task, "spam filtering", i == 0));
+			}
+		}
+		path = folder.getRoot().toPath().resolve("tasks");
+		engine.index(docs, path);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		engine.close();
+		DirectoryType.RAM.remove(path);
+	}
+
+	// the search task of every ranked hit of a query, best first, read back from its run file
+	private List<Long> rankedTasks() throws IOException {
+		Path run = folder.newFile().toPath();
+		try (RunWriter writer = new RunWriter(run)) {
+			engine.setRunWriter(writer, "test");
+			engine.search("spam filter", null, "spam filter", null, null, null);
+		} finally {
+			engine.setRunWriter(null, null);
+		}
+		// document keys start with the search task
+		List<Long> ranked = new ArrayList<Long>();
+		for (String line : Files.readAllLines(run, StandardCharsets.UTF_8)) {
+			String key = line.split(" ")[2];
+			ranked.add(Long.valueOf(key.substring(0, key.indexOf('-'))));
+		}
+		return ranked;
+	}
+
+	@Test
+	public void ranksOnlyTheDocumentsOfTheTask() throws IOException {
+		assertEquals(Collections.nCopies(5, 2L), rankedTasks());
+
+		engine.setRankingMethod("4", 3);
+		assertEquals(Collections.nCopies(5, 3L), rankedTasks());
+	}
+}